@@ -0,0 +1,89 @@
+/**
+ * CellIterator streams the coordinates of the live cells in a rectangle of a QuadNode, from north to south within each QuadNode. Empty QuadNodes and QuadNodes outside
+ * the rectangle are skipped whole, so the cost depends on the number of live cells rather than the area of the rectangle.
+ *
+ * Usage: while (it.next()) use(it.getX(), it.getY());
+ */
+
+package hashlife;
+
+public class CellIterator {
+	private final int x0, y0, x1, y1; // The rectangle, with inclusive edges
+	private final QuadNode[] nodes = new QuadNode[256]; // Stack of QuadNodes left to visit, along with their centers. A QuadNode of level L pushes at most 3L + 1 entries
+	private final int[] xs = new int[256], ys = new int[256];
+	private int size;
+	private int x, y; // The current cell
+
+	/**
+	 * Constructor, starts before the first cell
+	 * @param root a QuadNode centered on the origin
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 */
+	public CellIterator(QuadNode root, int x0, int y0, int x1, int y1) {
+		this.x0 = x0;
+		this.y0 = y0;
+		this.x1 = x1;
+		this.y1 = y1;
+		push(root, 0, 0);
+	}
+
+	/**
+	 * Moves to the next live cell
+	 * @return whether there was another live cell
+	 */
+	public boolean next() {
+		while (size > 0) {
+			size--;
+			QuadNode q = nodes[size];
+			int cx = xs[size], cy = ys[size];
+			nodes[size] = null;
+			if (q.level == 0) {
+				x = cx;
+				y = cy;
+				return true;
+			}
+			int half = 1 << (q.level - 1);
+			int e = cx + half / 2, w = cx - (half - half / 2), n = cy + half / 2, s = cy - (half - half / 2); // Centers of the children
+			push(q.se, e, s); // Pushed in reverse, so NW is visited first
+			push(q.sw, w, s);
+			push(q.ne, e, n);
+			push(q.nw, w, n);
+		}
+		return false;
+	}
+
+	/**
+	 * Pushes a QuadNode onto the stack if it has live cells inside the rectangle
+	 * @param q
+	 * @param cx
+	 * @param cy
+	 */
+	private void push(QuadNode q, int cx, int cy) {
+		int half = q.level == 0 ? 0 : 1 << (q.level - 1), reach = Math.max(half - 1, 0);
+		if (q.population == 0 || x1 < cx - half || x0 > cx + reach || y1 < cy - half || y0 > cy + reach)
+			return;
+		nodes[size] = q;
+		xs[size] = cx;
+		ys[size] = cy;
+		size++;
+	}
+
+	/**
+	 * Getter for x
+	 * @return the x coordinate of the current cell
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * Getter for y
+	 * @return the y coordinate of the current cell
+	 */
+	public int getY() {
+		return y;
+	}
+}
@@ -10,7 +10,11 @@ import java.awt.event.*;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
@@ -19,6 +23,7 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 	/// FUNCTIONALITY VARIABLES ///
 	NodeManager nm;
 	private String currentFile = "untitled";
+	private static final String GRID_FILES = ".*\\.(grid|rle|cells|mc|mc\\.gz|qtree)$"; // Names of files that can be opened as grids
 	static Random rng = new Random();
 
 	/// DISPLAY VARIABLES ///	
@@ -29,14 +34,35 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 	private boolean zoomable = true;
 
 	private double scale = 1.0;
-	private int sideLength = (int) (50 * scale);
+	private double sideLength = 50 * scale; // Side of a cell on the display, which is less than a pixel when zoomed far out
 	private int x_c, y_c;
 	private static Color cAlive, cDead, cLine;
+	private Color[] palette; // The color of each cell state, from the live color fading into the dead color as cells die
+	private Color[] shades; // Colors of QuadNodes drawn as a single pixel, from the dead color for empty ones to the live color for full ones
+	private static final double MIN_SCALE = 1e-12; // Furthest the display can zoom out, which fits 2^40 cells in about 50 pixels
+	private static final boolean RASTER = !"false".equals(System.getProperty("hashlife.raster")); // Draws cells straight into an image, unless run with -Dhashlife.raster=false
+	private final RasterRenderer raster = new RasterRenderer();
 
 	/// TOOL VARIABLES ///
 	int[][] selection;
-	static enum selectActions {RANDOM, FILL, KILL, STRUCT, INVERT};
+	static enum selectActions {RANDOM, FILL, KILL, STRUCT, INVERT, TRANSFORM, TILE};
 	selectActions selectAction = selectActions.FILL;
+	private double density = 0.5; // Chance that each cell is alive when randomizing a selection
+	private QuadNode.mergeModes stampMode = QuadNode.mergeModes.OR; // How structures are stamped onto the grid
+	private Patch clipboard; // The last region copied or cut
+	private int selectTransform; // Transform applied to selections by the TRANSFORM action
+	private int stampOrientation; // Transform applied to structures before they're stamped
+	private int[] tilePeriod = {10, 10}; // How far apart the copies of the structure are when tiling a selection
+	private ArrayList<int[]> matches; // Occurrences found by the last search, as {x, y, width, height}
+	private long matchGeneration; // Generation the occurrences were found in, after which they're no longer shown
+	private static final int CULL_INTERVAL = 64; // Generations between looking for escaping ships
+	private static final ExecutorService io = Executors.newSingleThreadExecutor(r -> { // Loads and saves, one at a time, off the Event Dispatch Thread
+		Thread thread = new Thread(r, "Grid files");
+		thread.setDaemon(true);
+		return thread;
+	});
+	static final String[] transforms = {"Rotate Clockwise", "Rotate Counterclockwise", "Rotate 180", "Flip Horizontal", "Flip Vertical", "Flip Diagonal", "Flip Antidiagonal"};
+	private static final int[] transformCodes = {QuadNode.ROTATE_CW, QuadNode.ROTATE_CCW, QuadNode.ROTATE_180, QuadNode.FLIP_X, QuadNode.FLIP_Y, QuadNode.TRANSPOSE, QuadNode.FLIP_ANTIDIAGONAL};
 	private Structure selectedStruct = new Structure("Untitled", "None");
 
 	private Tool tool = new Painter(this);
@@ -91,7 +117,7 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 	 */
 	void update() {
 		nm.update();
-		repaint();
+		repaint(); // Only the parts of the grid that changed are drawn again, as long as the view hasn't moved
 	}
 
 	/**
@@ -158,6 +184,8 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 			drawGridLines(g);
 		if (selection != null)
 			drawSelection(g);
+		if (matches != null && matchGeneration == nm.generation)
+			drawMatches(g);
 
 		if (firstRender) { // Sets the initial center 
 			x_c = getWidth() / 2;
@@ -171,33 +199,70 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 	 * @param g
 	 */
 	public void drawGrid(Graphics g) {
-		g.setColor(cAlive);
-		drawNode(g, nm.root, x_c, y_c);
+		int states = NodeManager.t.states;
+		if (palette == null || palette.length != states || !palette[1].equals(cAlive) || !palette[0].equals(cDead)) {
+			palette = new Color[states];
+			palette[0] = cDead;
+			for (int s = 1; s < states; s++) {
+				double f = (s - 1) / (double) (states - 1); // Dying states fade evenly between the live and dead colors
+				palette[s] = new Color((int) (cAlive.getRed() + f * (cDead.getRed() - cAlive.getRed())),
+						(int) (cAlive.getGreen() + f * (cDead.getGreen() - cAlive.getGreen())),
+						(int) (cAlive.getBlue() + f * (cDead.getBlue() - cAlive.getBlue())));
+			}
+			shades = new Color[256];
+			for (int i = 0; i < 256; i++)
+				shades[i] = new Color(cDead.getRed() + i * (cAlive.getRed() - cDead.getRed()) / 255, cDead.getGreen() + i * (cAlive.getGreen() - cDead.getGreen()) / 255,
+						cDead.getBlue() + i * (cAlive.getBlue() - cDead.getBlue()) / 255);
+		}
+		int[] sw = displayToGrid(0, getHeight()), ne = displayToGrid(getWidth(), 0);
+		nm.reveal(sw[0], sw[1], ne[0], ne[1]); // Only the part of a mapped file on the screen is read
+		Rectangle clip = g.getClipBounds();
+		if (clip == null)
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		if (RASTER)
+			raster.render(g, clip, nm.root, x_c, y_c, sideLength, palette, shades, getWidth(), getHeight());
+		else
+			drawNode(g, clip, nm.root, x_c, y_c);
 	}
 
 	/**
-	 * Recursively draws a QuadNode centered at coordinates (x, y)
+	 * Recursively draws a QuadNode centered at coordinates (x, y), skipping the parts outside the clip. QuadNodes that cover a pixel or less are drawn as one pixel,
+	 * shaded by the fraction of their cells that are alive, so the time taken depends on the size of the display rather than how far out it's zoomed.
 	 * @param g
+	 * @param clip the part of the screen being drawn
 	 * @param q
 	 * @param x
 	 * @param y
 	 */
-	private void drawNode(Graphics g, QuadNode q, int x, int y) {  // Similar to NodeManager.setCell(x, y)
-		if (q.population == 0) // Saves time by skipping empty nodes
+	private void drawNode(Graphics g, Rectangle clip, QuadNode q, double x, double y) {  // Similar to NodeManager.setCell(x, y)
+		if (q.state == 0) // Saves time by skipping empty nodes
+			return;
+		if (q.level == 0) { // (x, y) is the cell's upper left corner
+			int left = (int) Math.floor(x), top = (int) Math.floor(y);
+			g.setColor(palette[q.state < palette.length ? q.state : 1]);
+			g.fillRect(left, top, Math.max(1, (int) Math.floor(x + sideLength) - left), Math.max(1, (int) Math.floor(y + sideLength) - top));
 			return;
-		if (q.level == 0) {
-			g.fillRect(x, y, (int) sideLength, (int) sideLength);
-		} else if (q.level == 1) {
-			drawNode(g, q.nw, x - sideLength, y - sideLength);
-			drawNode(g, q.ne, x, y - sideLength);
-			drawNode(g, q.sw, x - sideLength, y);
-			drawNode(g, q.se, x, y);
+		}
+		double half = Math.scalb(sideLength, q.level - 1); // Half the side of the QuadNode on the screen, which doesn't fit in an int for large roots
+		if (x + half <= clip.x || y + half <= clip.y || x - half >= clip.x + clip.width || y - half >= clip.y + clip.height) // Entirely off the screen
+			return;
+		if (half <= 0.5) { // Covers a pixel or less
+			double density = q.population / Math.scalb(1.0, 2 * q.level);
+			g.setColor(shades[(int) Math.min(255, Math.round(density * 255))]);
+			g.fillRect((int) Math.floor(x - half), (int) Math.floor(y - half), 1, 1);
+			return;
+		}
+		if (q.level == 1) {
+			drawNode(g, clip, q.nw, x - sideLength, y - sideLength);
+			drawNode(g, clip, q.ne, x, y - sideLength);
+			drawNode(g, clip, q.sw, x - sideLength, y);
+			drawNode(g, clip, q.se, x, y);
 		} else {
-			int shift = (int) (sideLength * 1 << (q.level - 2));
-			drawNode(g, q.nw, x - shift, y - shift);
-			drawNode(g, q.ne, x + shift, y - shift);
-			drawNode(g, q.sw, x - shift, y + shift);
-			drawNode(g, q.se, x + shift, y + shift);
+			double shift = half / 2;
+			drawNode(g, clip, q.nw, x - shift, y - shift);
+			drawNode(g, clip, q.ne, x + shift, y - shift);
+			drawNode(g, clip, q.sw, x - shift, y + shift);
+			drawNode(g, clip, q.se, x + shift, y + shift);
 		}
 	}
 
@@ -210,17 +275,17 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 		int width = getWidth(),
 				height = getHeight();
 
-		for (int x = x_c; x <= width; x += sideLength)
-			g.drawLine(x, 0, x, height);
+		for (double x = x_c; x <= width; x += sideLength)
+			g.drawLine((int) Math.floor(x), 0, (int) Math.floor(x), height);
 
-		for (int x = x_c; x >= 0; x -= sideLength)
-			g.drawLine(x, 0, x, height);
+		for (double x = x_c; x >= 0; x -= sideLength)
+			g.drawLine((int) Math.floor(x), 0, (int) Math.floor(x), height);
 
-		for (int y = y_c; y <= height; y += sideLength)
-			g.drawLine(0, y, width, y);
+		for (double y = y_c; y <= height; y += sideLength)
+			g.drawLine(0, (int) Math.floor(y), width, (int) Math.floor(y));
 
-		for (int y = y_c; y >= 0; y -= sideLength)
-			g.drawLine(0, y, width, y);
+		for (double y = y_c; y >= 0; y -= sideLength)
+			g.drawLine(0, (int) Math.floor(y), width, (int) Math.floor(y));
 
 		Graphics2D g2 = (Graphics2D) g;
 		g2.setStroke(new BasicStroke(2));
@@ -253,18 +318,36 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 			g.drawRect(anchorDisplayCoords[0], anchorDisplayCoords[1], width, height);
 	}
 
+	/**
+	 * Outlines the occurrences found by the last search
+	 * @param g
+	 */
+	private void drawMatches(Graphics g) {
+		g.setColor(new Color(255, 160, 40, 220));
+		for (int[] m: matches) {
+			int[] corner = gridToDisplay(m[0], m[1] + m[3]);
+			g.drawRect(corner[0], corner[1], (int) Math.ceil(m[2] * sideLength), (int) Math.ceil(m[3] * sideLength));
+		}
+	}
+
 	/**
 	 * Draws the ghost of the selected structure at the location of the user's mouse
 	 * @param g
 	 */
 	private void drawGhost(Graphics g) {
 		g.setColor(new Color(cAlive.getRed(), cAlive.getGreen(), cAlive.getBlue(), 80)); // Ghost color
+		Patch original = selectedStruct.getPatch();
 		for (String c: selectedStruct.getCells()) {
 			int[] coords = Structure.stringToCoords(c);
+			if (stampOrientation != 0) { // Oriented the same way the structure will be stamped
+				int[] uv = Patch.transform(coords[0] - original.left, coords[1] - original.bottom, original.width, original.height, stampOrientation);
+				coords = new int[] {original.left + uv[0], original.bottom + uv[1]};
+			}
 			int[] displayCoords = gridToDisplay(coords);
 			int[] newGridCoords = displayToGrid(displayCoords[0] + mouseX, displayCoords[1] + mouseY); // Discretizing the position for each cell + user mouse
 			int[] newDisplayCoords = gridToDisplay(newGridCoords);
-			g.fillRect(newDisplayCoords[0], newDisplayCoords[1] - sideLength, sideLength, sideLength);
+			int side = Math.max(1, (int) sideLength);
+			g.fillRect(newDisplayCoords[0], newDisplayCoords[1] - side, side, side);
 		}
 	}
 
@@ -278,8 +361,8 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 	 * @return
 	 */
 	private int[] gridToDisplay(int x, int y) {
-		int x_coord = x * sideLength + x_c;
-		int y_coord = y * -sideLength + y_c;
+		int x_coord = (int) Math.floor(x * sideLength + x_c);
+		int y_coord = (int) Math.floor(y * -sideLength + y_c);
 
 		return new int[] {x_coord, y_coord};
 	}
@@ -398,62 +481,128 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 	 * @param struct
 	 */
 	public void addStructure(int x, int y, HashSet<String> struct) {
+		int[] cells = new int[2 * struct.size()];
+		int n = 0;
 		for (String coord: struct) {
 			String[] split = coord.split(" ");
-			int sX = Integer.parseInt(split[0]),
-					sY = Integer.parseInt(split[1]);		
-			nm.setCell(x + sX, y + sY, true);
+			cells[n++] = x + Integer.parseInt(split[0]);
+			cells[n++] = y + Integer.parseInt(split[1]);
 		}
+		nm.addCells(cells, n / 2);
+	}
+
+	/**
+	 * Stamps a structure onto the grid at the coordinates (x, y) with the current stamp mode
+	 * @param x
+	 * @param y
+	 * @param struct
+	 */
+	public void stampStructure(int x, int y, Structure struct) {
+		Patch patch = struct.getPatch(stampOrientation);
+		if (patch != null)
+			nm.stamp(patch, x, y, stampMode);
 	}
 
 	/**
 	 * Performs the current select action on the current selected region and repaints
 	 */
 	void performSelectAction() {
-		int minX = Math.min(selection[0][0], selection[1][0]),
-				maxX = Math.max(selection[0][0], selection[1][0]) - 1;
-
-		int minY = Math.min(selection[0][1], selection[1][1]),
-				maxY = Math.max(selection[0][1], selection[1][1]) - 1;
-
-		int width = maxX - minX + 1;
-		int height = maxY - minY + 1;
+		int[] bounds = getSelectionBounds();
+		int minX = bounds[0], minY = bounds[1], maxX = bounds[2], maxY = bounds[3];
 
 		switch (selectAction) {
 		case RANDOM:
-			for (int x = minX; x <= maxX; x++)
-				for (int y = minY; y <= maxY; y++)
-					nm.setCell(x, y, rng.nextBoolean());
+			nm.randomRect(minX, minY, maxX, maxY, density, rng.nextLong());
 			break;
 		case FILL:
-			for (int x = minX; x <= maxX; x++)
-				for (int y = minY; y <= maxY; y++)
-					nm.setCell(x, y, true);
+			nm.fillRect(minX, minY, maxX, maxY, true);
 			break;
 		case KILL:
-			for (int x = minX; x <= maxX; x++)
-				for (int y = minY; y <= maxY; y++)
-					nm.setCell(x, y, false);
+			nm.fillRect(minX, minY, maxX, maxY, false);
 			break;
 		case STRUCT:
 			HashSet<String> structCells = new HashSet<String>();
-			for (int x = 0; x <= width; x++)
-				for (int y = 0; y <= height; y++)
-					if (nm.getCell(minX + x, minY + y))
-						structCells.add(x + " " + y);
+			CellIterator it = nm.cells(minX, minY, maxX, maxY);
+			while (it.next())
+				structCells.add((it.getX() - minX) + " " + (it.getY() - minY));
 			StructureCreator s = new StructureCreator(structCells);
 			removeSelection();
 			break;
 		case INVERT:
-			for (int x = minX; x <= maxX; x++)
-				for (int y = minY; y <= maxY; y++)
-					nm.flipCell(x, y);
+			nm.invertRect(minX, minY, maxX, maxY);
+			break;
+		case TRANSFORM: // Transforms the selection in place, keeping its SW corner fixed
+			Patch p = nm.copy(minX, minY, maxX, maxY).transform(selectTransform);
+			nm.fillRect(minX, minY, maxX, maxY, false);
+			nm.paste(p, minX, minY);
+			selection = new int[][] {{minX, minY}, {minX + p.width, minY + p.height}};
+			break;
+		case TILE: // Fills the selection with copies of the selected structure, oriented as it would be stamped
+			Patch tile = selectedStruct.getPatch(stampOrientation);
+			if (tile != null)
+				nm.paste(tile.tile(tilePeriod[0], tilePeriod[1], maxX - minX + 1, maxY - minY + 1), minX, minY);
+			break;
 		default:
 			break;
 		}		
 		repaint();
 	}
 
+	/**
+	 * Gets the cells covered by the current selection
+	 * @return {minX, minY, maxX, maxY}, or null if nothing is selected
+	 */
+	private int[] getSelectionBounds() {
+		if (selection == null)
+			return null;
+		return new int[] {Math.min(selection[0][0], selection[1][0]), Math.min(selection[0][1], selection[1][1]),
+						  Math.max(selection[0][0], selection[1][0]) - 1, Math.max(selection[0][1], selection[1][1]) - 1};
+	}
+
+	/**
+	 * Copies the current selection to the clipboard, clearing it from the grid if cutting
+	 * @param cut
+	 */
+	public void copySelection(boolean cut) {
+		int[] bounds = getSelectionBounds();
+		if (bounds == null || bounds[0] > bounds[2] || bounds[1] > bounds[3])
+			return;
+		clipboard = nm.copy(bounds[0], bounds[1], bounds[2], bounds[3]);
+		if (cut)
+			nm.fillRect(bounds[0], bounds[1], bounds[2], bounds[3], false);
+		repaint();
+	}
+
+	/**
+	 * Pastes the clipboard over the grid, with its SW corner at the SW corner of the selection or, if nothing is selected, at the cell under the mouse
+	 */
+	public void paste() {
+		if (clipboard == null)
+			return;
+		int[] bounds = getSelectionBounds();
+		int[] at = bounds != null ? new int[] {bounds[0], bounds[1]} : displayToGrid(mouseX + x_c, mouseY + y_c);
+		nm.paste(clipboard, at[0], at[1]);
+		repaint();
+	}
+
+	/**
+	 * Finds every isolated occurrence of the selected region or, if nothing is selected, of the selected structure, in any orientation, and outlines them
+	 */
+	public void findPattern() {
+		int[] bounds = getSelectionBounds();
+		Patch pattern = bounds != null ? nm.copy(bounds[0], bounds[1], bounds[2], bounds[3]) : selectedStruct.getPatch();
+		if (pattern == null || pattern.node.population == 0)
+			return;
+		matches = new ArrayList<int[]>();
+		for (int[] m: nm.find(pattern, true)) {
+			boolean turned = (m[2] & QuadNode.TRANSPOSE) != 0;
+			matches.add(new int[] {m[0], m[1], turned ? pattern.height : pattern.width, turned ? pattern.width : pattern.height});
+		}
+		matchGeneration = nm.generation;
+		removeSelection();
+		JOptionPane.showMessageDialog(this, "Found " + matches.size() + " occurrence" + (matches.size() == 1 ? "" : "s") + ".", "Find", JOptionPane.INFORMATION_MESSAGE);
+	}
+
 	/**
 	 * Gets rid of the current selection and repaints
 	 */
@@ -463,7 +612,9 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 	}
 
 	public void reset() {
+		nm.stopRecording();
 		nm = new NodeManager();
+		matches = null;
 		repaint();
 	}
 
@@ -538,7 +689,7 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 			double dx = x - (x * factor); 
 			double dy = y - (y * factor);
 
-			if (scale < 6 && scale > 0.04) {
+			if (scale < 6 && scale > MIN_SCALE) {
 				x_c += (dx * Math.signum(factor));
 				y_c += (dy * Math.signum(factor));
 			}
@@ -561,10 +712,10 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 	private void rescale() {
 		if (scale > 6) // Binds the scale
 			scale = 6;
-		else if (scale <= 0.04)
-			scale = 0.04;
+		else if (scale <= MIN_SCALE)
+			scale = MIN_SCALE;
 
-		sideLength = (int) (50 * scale);
+		sideLength = 50 * scale;
 
 		if (sideLength <= 3)
 			showLines = false;
@@ -574,75 +725,234 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 		repaint();
 	}
 
+	/**
+	 * Zooms and moves so that every live cell fits on the display
+	 */
+	public void zoomToFit() {
+		int[] bounds = nm.getBounds();
+		if (bounds == null)
+			return;
+		int width = bounds[2] - bounds[0] + 1, height = bounds[3] - bounds[1] + 1;
+		scale = 0.9 * Math.min(getWidth() / (double) width, getHeight() / (double) height) / 50; // Leaves a margin around the cells
+		rescale();
+		x_c = (int) (getWidth() / 2 - (bounds[0] + width / 2.0) * sideLength);
+		y_c = (int) (getHeight() / 2 + (bounds[1] + height / 2.0) * sideLength);
+		repaint();
+	}
+
 
 	/// OPENING AND SAVING GRIDS ///
 
 	/**
-	 * Reads a grid from a file selected by the user
+	 * Reads a grid from a file selected by the user. The file is read in the background, and the grid is only replaced once all of it has been read.
 	 */
 	public void read() {
-		nm.root = QuadNode.newEmpty(7);
-		try {			
+		JFileChooser fd = new JFileChooser(System.getProperty("user.dir") + "\\grids\\");
+		FileNameExtensionFilter filter = new FileNameExtensionFilter("Grid files", "grid", "rle", "cells", "mc", "gz", "qtree");
+		fd.setFileFilter(filter);
+		if (fd.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+			return;
+		String dest = fd.getSelectedFile().getPath();
+
+		if (!dest.matches(GRID_FILES)) { // Constrains opened files to be grid files
+			JOptionPane.showConfirmDialog(this, "Invalid file type. You can only open '.grid', '.rle', '.cells', '.mc', '.mc.gz' and '.qtree' files, silly!", "Invalid file type", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+
+		String title = "Opening " + fd.getSelectedFile().getName();
+		if (dest.endsWith(".qtree")) { // Mapped files are read a tile at a time as they come into view
+			runInBackground(title, progress -> MappedGrid.open(dest), grid -> {
+				nm.open(grid);
+				opened(dest);
+			});
+		} else if (dest.matches(".*\\.(mc|mc\\.gz)$")) { // Macrocell files rebuild the QuadNodes directly
+			runInBackground(title, progress -> Macrocell.read(dest, progress), frame -> {
+				showFrame(frame);
+				opened(dest);
+			});
+		} else { // Cell lists are streamed into a new root a batch at a time
+			runInBackground(title, progress -> PatternIO.read(dest, progress), frame -> {
+				showFrame(frame);
+				opened(dest);
+			});
+		}
+	}
+
+	/**
+	 * Makes a file that has just been opened the current file
+	 * @param path
+	 */
+	private void opened(String path) {
+		currentFile = path;
+		Window window = SwingUtilities.getWindowAncestor(this);
+		if (window instanceof JFrame)
+			((JFrame) window).setTitle("CA Play - " + path);
+		repaint();
+	}
+
+	/**
+	 * Saves the grid to a destination selected by the user. The grid is saved in the background as it was when the save started, so the simulation can keep running.
+	 * @param dialog
+	 */
+	public void write(boolean dialog) {
+		String dest;
+		if (dialog || currentFile.equals("untitled")) {
 			JFileChooser fd = new JFileChooser(System.getProperty("user.dir") + "\\grids\\");
-			FileNameExtensionFilter filter = new FileNameExtensionFilter("Grid files", "grid");
+			FileNameExtensionFilter filter = new FileNameExtensionFilter("Grid files", "grid", "rle", "cells", "mc", "gz", "qtree");
 			fd.setFileFilter(filter);
-			if (fd.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-				String dest = fd.getSelectedFile().getPath();
+			if (fd.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+				dest = fd.getSelectedFile().getPath();
+			else
+				return;
+		} else {
+			dest = currentFile;
+		}
+		if (!dest.matches(GRID_FILES)) // Names without a known ending are saved as .grid files, as they always have been
+			dest += ".grid";
+
+		File file = new File(dest).getAbsoluteFile();
+		File part = new File(file.getParentFile(), "~" + file.getName()); // Written first and then moved over the file, so a cancelled save leaves the old file alone
+		runInBackground("Saving " + file.getName(), progress -> {
+			NodeLog.Frame frame = nm.snapshot(progress); // Reveals the rest of a mapped grid first, since the file being replaced may be the one still mapped
+			try {
+				if (file.getName().endsWith(".qtree"))
+					MappedGrid.write(part.getPath(), frame.root, frame.generation, frame.rule, progress);
+				else if (file.getName().matches(".*\\.(mc|mc\\.gz)$"))
+					Macrocell.write(part.getPath(), frame.root, frame.generation, frame.rule, progress);
+				else
+					PatternIO.write(part.getPath(), frame.root, frame.rule, progress);
+				Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				part.delete();
+			}
+			return file;
+		}, saved -> opened(saved.getPath())); // Only a save that finished becomes the current file
+	}
 
-				if (!dest.matches(".*\\.grid$")) { // Constrains opened files to be grid files
-					JOptionPane.showConfirmDialog(this, "Invalid file type. You can only open '.grid' files, silly!", "Invalid file type", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+	/**
+	 * Runs a load or save on the background executor, showing its progress in a dialog whose Cancel button stops it
+	 * @param title
+	 * @param job
+	 * @param done called on the Event Dispatch Thread with the job's result, unless the job fails or is cancelled
+	 */
+	private <T> void runInBackground(String title, Progress.Job<T> job, Consumer<T> done) {
+		Progress progress = new Progress();
+		ProgressMonitor monitor = new ProgressMonitor(this, title, null, 0, 1000);
+		javax.swing.Timer timer = new javax.swing.Timer(100, e -> {
+			monitor.setProgress((int) (progress.getFraction() * 999)); // Reaching the maximum would close the dialog before the job is done
+			if (monitor.isCanceled())
+				progress.cancel();
+		});
+		timer.start();
+		io.execute(() -> {
+			Object result;
+			try {
+				result = job.run(progress);
+			} catch (Exception e) {
+				result = e;
+			}
+			Object finished = result;
+			SwingUtilities.invokeLater(() -> {
+				timer.stop();
+				monitor.close();
+				if (progress.isCancelled())
+					return;
+				if (finished instanceof Exception) {
+					((Exception) finished).printStackTrace();
+					JOptionPane.showMessageDialog(this, ((Exception) finished).getMessage(), title + " failed", JOptionPane.ERROR_MESSAGE);
 					return;
 				}
+				@SuppressWarnings("unchecked")
+				T value = (T) finished;
+				done.accept(value);
+			});
+		});
+	}
 
-				String content = new String(Files.readAllBytes(Paths.get(dest)));
+	/**
+	 * Starts removing ships that escape farther than a distance chosen by the user, or stops and reports how many were removed
+	 */
+	public void cullShips() {
+		if (nm.isCulling()) {
+			ShipCuller c = nm.stopCulling();
+			JOptionPane.showMessageDialog(this, "Removed " + c.summary() + ".", "Cull Escaping Ships", JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		String distance = JOptionPane.showInputDialog(this, "Remove gliders and spaceships farther than this many cells from the rest of the pattern:", "200");
+		if (distance == null || !distance.matches("[0-9]+"))
+			return;
+		nm.startCulling(Integer.parseInt(distance), CULL_INTERVAL);
+	}
 
-				String[] cells = content.split("\n");
-				for (String c: cells) // Fill cells
-					nm.setCell(Structure.stringToCoords(c)[0], Structure.stringToCoords(c)[1], true);
+	/**
+	 * Shows how well cached tiles and redrawing only what changed are saving work when drawing, then starts counting the tiles over
+	 */
+	public void showRenderStats() {
+		String stats = RASTER ? "Tile cache: " + raster.getTiles().summary() + ".\nLast frame redrew " + raster.summary() + "."
+				: "Tiles are only cached when cells are drawn into an image.";
+		JOptionPane.showMessageDialog(this, stats, "Rendering Stats", JOptionPane.INFORMATION_MESSAGE);
+		raster.getTiles().resetStats();
+	}
 
-			}
-			currentFile = fd.getSelectedFile().getName();
+	/**
+	 * Starts recording the run to a log selected by the user, or stops the recording in progress
+	 */
+	public void record() {
+		if (nm.isRecording()) {
+			nm.stopRecording();
+			return;
+		}
+		try {
+			JFileChooser fd = new JFileChooser(System.getProperty("user.dir") + "\\grids\\");
+			FileNameExtensionFilter filter = new FileNameExtensionFilter("Recordings", "nlog");
+			fd.setFileFilter(filter);
+			if (fd.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+				return;
+			String dest = fd.getSelectedFile().getPath();
+			if (!dest.matches(".*\\.nlog$"))
+				dest += ".nlog";
+
+			String interval = JOptionPane.showInputDialog(this, "Generations between checkpoints:", "1");
+			if (interval == null || !interval.matches("[0-9]+"))
+				return;
+			nm.startRecording(dest, Integer.parseInt(interval));
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
 	/**
-	 * Saves the grid to a destination selected by the user
-	 * @param dialog
+	 * Opens a recording selected by the user, resuming from its last checkpoint and letting the user scrub through the rest
 	 */
-	public void write(boolean dialog) {
+	public void openRecording() {
 		try {
-			String dest;
-			if (dialog || currentFile.equals("untitled")) {
-				JFileChooser fd = new JFileChooser(System.getProperty("user.dir") + "\\grids\\");
-				FileNameExtensionFilter filter = new FileNameExtensionFilter("Grid files", "grid");
-				fd.setFileFilter(filter);
-				if (fd.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
-					dest = fd.getSelectedFile().getPath();
-				else
-					return;
-			} else {
-				dest = currentFile;
-			}
+			JFileChooser fd = new JFileChooser(System.getProperty("user.dir") + "\\grids\\");
+			FileNameExtensionFilter filter = new FileNameExtensionFilter("Recordings", "nlog");
+			fd.setFileFilter(filter);
+			if (fd.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+				return;
 
-			File newFile = new File(dest + ".grid");
-			FileWriter writer = new FileWriter(newFile);
-			int minX = -(1 << (nm.root.level - 1)),
-					minY = minX;
-			int maxX = 1 << (nm.root.level - 1),
-					maxY = maxX;
-
-			for (int x = minX; x <= maxX + 1; x++)
-				for (int y = minY; y <= maxY + 1; y++)
-					if (nm.getCell(x, y))
-						writer.write(x + " " + y + "\n"); // Writes all live cell coordinates
-			writer.close();
+			ArrayList<NodeLog.Frame> frames = NodeLog.read(fd.getSelectedFile().getPath()); // Read only, since the run may still be recording to it
+			if (frames.isEmpty()) {
+				JOptionPane.showMessageDialog(this, "This recording doesn't have any checkpoints.", "Empty recording", JOptionPane.WARNING_MESSAGE);
+				return;
+			}
+			showFrame(frames.get(frames.size() - 1));
+			new RecordingPlayer(this, frames);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Replaces the grid with a checkpoint from a recording
+	 * @param frame
+	 */
+	public void showFrame(NodeLog.Frame frame) {
+		nm.replace(frame.root, frame.generation, frame.rule);
+		repaint();
+	}
+
 
 	/// GETTERS AND SETTERS ///
 
@@ -777,7 +1087,7 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 	}
 
 	/**
-	 * Change the right-click action for selections. Choices are: Fill, Delete, Randomize
+	 * Change the right-click action for selections. Choices are: Fill, Delete, Randomize, Invert, Tile with Structure, or any of the transforms
 	 * @param choice
 	 */
 	public void setSelectAction(String choice) {
@@ -794,11 +1104,93 @@ public class GridManager extends JPanel implements MouseWheelListener, MouseList
 		case "Invert":
 			selectAction = selectActions.INVERT;
 			break;
+		case "Tile with Structure":
+			selectAction = selectActions.TILE;
+			break;
+		default:
+			int t = transformCode(choice);
+			if (t != 0) {
+				selectAction = selectActions.TRANSFORM;
+				selectTransform = t;
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Change how the Structure Adder orients structures. Choices are: Original, or any of the transforms
+	 * @param choice
+	 */
+	public void setStampOrientation(String choice) {
+		stampOrientation = transformCode(choice);
+	}
+
+	/**
+	 * Gets the transform named by a choice
+	 * @param choice
+	 * @return a combination of QuadNode.FLIP_X, FLIP_Y and TRANSPOSE, or 0 if the choice isn't a transform
+	 */
+	private static int transformCode(String choice) {
+		for (int i = 0; i < transforms.length; i++)
+			if (transforms[i].equals(choice))
+				return transformCodes[i];
+		return 0;
+	}
+
+	/**
+	 * Change how the Structure Adder stamps structures. Choices are: Place, Toggle, Erase
+	 * @param choice
+	 */
+	public void setStampMode(String choice) {
+		switch (choice) {
+		case "Place":
+			stampMode = QuadNode.mergeModes.OR;
+			break;
+		case "Toggle":
+			stampMode = QuadNode.mergeModes.XOR;
+			break;
+		case "Erase":
+			stampMode = QuadNode.mergeModes.AND_NOT;
+			break;
 		default:
 			break;
 		}
 	}
 
+	/**
+	 * Getter for tilePeriod
+	 * @return {dx, dy}
+	 */
+	public int[] getTilePeriod() {
+		return tilePeriod.clone();
+	}
+
+	/**
+	 * Setter for tilePeriod, ignoring periods that aren't positive
+	 * @param dx
+	 * @param dy
+	 */
+	public void setTilePeriod(int dx, int dy) {
+		if (dx > 0 && dy > 0)
+			tilePeriod = new int[] {dx, dy};
+	}
+
+	/**
+	 * Getter for density
+	 * @return
+	 */
+	public double getDensity() {
+		return density;
+	}
+
+	/**
+	 * Setter for density
+	 * @param density the chance that each cell is alive when randomizing a selection
+	 */
+	public void setDensity(double density) {
+		this.density = Math.min(Math.max(density, 0), 1);
+	}
+
 	/**
 	 * Getter for zoomable
 	 * @return
@@ -0,0 +1,245 @@
+/**
+ * Macrocell reads and writes grids in the macrocell format used by Golly, which stores the QuadNode DAG itself rather than a list of cells, so a pattern takes as
+ * much space on disk as it does in memory. Each distinct QuadNode is written once, after its children, as a line giving its level and the line numbers of its
+ * children, with 0 for empty children. The smallest QuadNodes are written as 8x8 blocks of cells, or as level 1 QuadNodes of states for rules with more than two states.
+ * Files ending in .gz are compressed, and compressed files are recognized when reading whatever their name.
+ */
+
+package hashlife;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class Macrocell {
+	private static final String HEADER = "[M2]"; // First characters of every macrocell file
+	private static final int LEAF_LEVEL = 3; // Level of the 8x8 blocks of two state patterns
+
+	/**
+	 * Writes a grid to a file, compressing it if the path ends in .gz
+	 * @param path
+	 * @param root a QuadNode centered on the origin
+	 * @param generation
+	 * @param rule
+	 * @throws IOException
+	 */
+	public static void write(String path, QuadNode root, long generation, String rule) throws IOException {
+		write(path, root, generation, rule, null);
+	}
+
+	/**
+	 * Writes a grid to a file, compressing it if the path ends in .gz, and reports the live cells written so far
+	 * @param path
+	 * @param root a QuadNode centered on the origin
+	 * @param generation
+	 * @param rule
+	 * @param progress may be null
+	 * @throws IOException
+	 */
+	public static void write(String path, QuadNode root, long generation, String rule, Progress progress) throws IOException {
+		OutputStream out = new FileOutputStream(path);
+		if (path.endsWith(".gz"))
+			out = new GZIPOutputStream(out, 1 << 16);
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 1 << 16)) {
+			write(writer, root, generation, rule, progress);
+		}
+	}
+
+	/**
+	 * Writes a grid
+	 * @param writer
+	 * @param root a QuadNode centered on the origin
+	 * @param generation
+	 * @param rule
+	 * @param progress may be null
+	 * @throws IOException
+	 */
+	public static void write(Writer writer, QuadNode root, long generation, String rule, Progress progress) throws IOException {
+		boolean states = new Transitions(rule).states > 2; // Whether cells are written as states instead of 8x8 blocks. Taken from the rule being written, which may not be the current one
+		int leaf = states ? 1 : LEAF_LEVEL;
+		while (root.level < leaf)
+			root = root.expand();
+
+		writer.write(HEADER + " (CA Play)\n");
+		writer.write("#R " + Transitions.toNotation(rule) + "\n");
+		if (generation != 0)
+			writer.write("#G " + generation + "\n");
+		if (progress != null)
+			progress.start(root.population);
+		if (root.state != 0)
+			number(root, leaf, new HashMap<QuadNode, Integer>(), writer, progress);
+	}
+
+	/**
+	 * Writes a QuadNode's line after the lines of its descendants, unless it has already been written
+	 * @param q
+	 * @param leaf the level of the smallest QuadNodes
+	 * @param ids line numbers of the QuadNodes written so far, starting at 1
+	 * @param writer
+	 * @param progress counts the live cells of every QuadNode finished, whether it was written now or before
+	 * @return the line number of q, or 0 if it's empty
+	 * @throws IOException
+	 */
+	private static int number(QuadNode q, int leaf, HashMap<QuadNode, Integer> ids, Writer writer, Progress progress) throws IOException {
+		if (q.state == 0)
+			return 0;
+		Integer id = ids.get(q);
+		if (id != null) {
+			if (progress != null)
+				progress.advance(q.population);
+			return id;
+		}
+
+		if (progress != null && q.level == leaf)
+			progress.advance(q.population);
+		if (leaf == 1 && q.level == 1)
+			writer.write("1 " + q.nw.state + " " + q.ne.state + " " + q.sw.state + " " + q.se.state + "\n");
+		else if (q.level == LEAF_LEVEL && leaf == LEAF_LEVEL)
+			writer.write(leaf(q));
+		else {
+			int nw = number(q.nw, leaf, ids, writer, progress), ne = number(q.ne, leaf, ids, writer, progress), sw = number(q.sw, leaf, ids, writer, progress),
+					se = number(q.se, leaf, ids, writer, progress);
+			writer.write(q.level + " " + nw + " " + ne + " " + sw + " " + se + "\n");
+		}
+		ids.put(q, ids.size() + 1);
+		return ids.size();
+	}
+
+	/**
+	 * Writes an 8x8 block as rows from the north, with '*' for live cells and '.' for dead ones. Each row ends with '$', and dead cells at the ends of rows and empty
+	 * rows at the end of the block are left out.
+	 * @param q a level 3 QuadNode
+	 * @return the line
+	 */
+	private static String leaf(QuadNode q) {
+		int[] bits = {q.nw.cellBits(), q.ne.cellBits(), q.sw.cellBits(), q.se.cellBits()};
+		StringBuilder line = new StringBuilder();
+		for (int row = 0; row < 8; row++) {
+			int west = bits[row < 4 ? 0 : 2] >>> (12 - 4 * (row & 3)) & 0xF, east = bits[row < 4 ? 1 : 3] >>> (12 - 4 * (row & 3)) & 0xF;
+			int cells = west << 4 | east; // The row's cells, with the west edge as the highest bit
+			for (int col = 7; cells != 0; col--) {
+				line.append((cells >>> col & 1) == 1 ? '*' : '.');
+				cells &= (1 << col) - 1;
+			}
+			line.append('$');
+		}
+		while (line.length() > 1 && line.charAt(line.length() - 2) == '$')
+			line.setLength(line.length() - 1);
+		return line.append('\n').toString();
+	}
+
+	/**
+	 * Reads a grid from a file, which may be compressed
+	 * @param path
+	 * @return the grid as a Frame, whose rule is null if the file doesn't give one that's valid
+	 * @throws IOException if the file isn't a macrocell file
+	 */
+	public static NodeLog.Frame read(String path) throws IOException {
+		return read(path, null);
+	}
+
+	/**
+	 * Reads a grid from a file, which may be compressed, and reports the bytes read so far
+	 * @param path
+	 * @param progress may be null
+	 * @return the grid as a Frame, whose rule is null if the file doesn't give one that's valid
+	 * @throws IOException if the file isn't a macrocell file
+	 */
+	public static NodeLog.Frame read(String path, Progress progress) throws IOException {
+		if (progress != null)
+			progress.start(new File(path).length());
+		InputStream in = new BufferedInputStream(Progress.track(new FileInputStream(path), progress), 1 << 16);
+		in.mark(2);
+		boolean compressed = in.read() == 0x1F && in.read() == 0x8B;
+		in.reset();
+		if (compressed)
+			in = new GZIPInputStream(in, 1 << 16);
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII), 1 << 16)) {
+			return read(reader);
+		}
+	}
+
+	/**
+	 * Reads a grid in one pass, building each QuadNode straight from the ones before it
+	 * @param reader
+	 * @return the grid as a Frame, whose rule is null if the file doesn't give one that's valid
+	 * @throws IOException if the text isn't a macrocell file
+	 */
+	public static NodeLog.Frame read(BufferedReader reader) throws IOException {
+		String line = reader.readLine();
+		if (line == null || !line.startsWith(HEADER))
+			throw new IOException("Not a macrocell file");
+
+		String rule = null;
+		long generation = 0;
+		ArrayList<QuadNode> nodes = new ArrayList<QuadNode>();
+		nodes.add(null); // Line numbers start at 1, and 0 means an empty child
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty())
+				continue;
+			char first = line.charAt(0);
+			if (first == '#') {
+				if (line.startsWith("#R"))
+					rule = Transitions.fromNotation(line.substring(2));
+				else if (line.startsWith("#G"))
+					generation = Long.parseLong(line.substring(2).trim());
+			} else if (first == '.' || first == '*' || first == '$')
+				nodes.add(leaf(line));
+			else {
+				String[] split = line.trim().split("\\s+");
+				int level = Integer.parseInt(split[0]);
+				QuadNode[] children = new QuadNode[4];
+				for (int i = 0; i < 4; i++) {
+					int child = Integer.parseInt(split[i + 1]);
+					if (level == 1)
+						children[i] = QuadNode.newNode(child);
+					else if (child == 0)
+						children[i] = QuadNode.newEmpty(level - 1);
+					else if (child >= nodes.size() || nodes.get(child).level != level - 1)
+						throw new IOException("Bad child " + child + " in " + line);
+					else
+						children[i] = nodes.get(child);
+				}
+				nodes.add(QuadNode.newNode(children[0], children[1], children[2], children[3]));
+			}
+		}
+		QuadNode root = nodes.size() > 1 ? nodes.get(nodes.size() - 1) : QuadNode.newEmpty(7);
+		return new NodeLog.Frame(generation, root, rule);
+	}
+
+	/**
+	 * Builds an 8x8 block from its line
+	 * @param line
+	 * @return a level 3 QuadNode
+	 */
+	private static QuadNode leaf(String line) {
+		int[] bits = new int[4]; // Cells of the NW, NE, SW and SE 4x4 blocks, packed like cellBits()
+		int row = 0, col = 0;
+		for (int i = 0; i < line.length() && row < 8; i++) {
+			char c = line.charAt(i);
+			if (c == '$') {
+				row++;
+				col = 0;
+			} else if (c == '*' || c == '.') {
+				if (c == '*' && col < 8)
+					bits[(row < 4 ? 0 : 2) + (col < 4 ? 0 : 1)] |= 1 << (15 - 4 * (row & 3) - (col & 3));
+				col++;
+			}
+		}
+		return QuadNode.newNode(QuadNode.block(bits[0]), QuadNode.block(bits[1]), QuadNode.block(bits[2]), QuadNode.block(bits[3]));
+	}
+}
@@ -10,6 +10,9 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
 
 
 public class Main extends JFrame implements ActionListener {
@@ -33,6 +36,21 @@ public class Main extends JFrame implements ActionListener {
 	}
 
 	public static void main(String[] args) {
+		String storePath = System.getProperty("hashlife.store"); // Attaches to a node store shared with other processes, e.g. -Dhashlife.store=nodes.store
+		if (storePath != null) {
+			try {
+				QuadNode.store = NodeStore.open(storePath, Integer.getInteger("hashlife.storeCapacity", NodeStore.DEFAULT_CAPACITY), NodeManager.t.getCode());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() { // Saves the current rule's results for the next session
+			public void run() {
+				MemoCache.save();
+				MemoCache.flush();
+			}
+		});
+
 		Main m = new Main("CA Play - untitled");
 		m.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
@@ -66,12 +84,61 @@ public class Main extends JFrame implements ActionListener {
 		open.setActionCommand("load");
 		open.addActionListener(m);
 		
+		JMenuItem record = new JMenuItem("Record Run");
+		record.setActionCommand("record");
+		record.addActionListener(m);
+		
+		JMenuItem replay = new JMenuItem("Open Recording");
+		replay.setActionCommand("replay");
+		replay.addActionListener(m);
+		
+		
+		JMenu edit = new JMenu("Edit");
+		
+		JMenuItem copy = new JMenuItem("Copy");
+		copy.setActionCommand("copy");
+		copy.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_C, InputEvent.CTRL_DOWN_MASK));
+		copy.addActionListener(m);
+		
+		JMenuItem cut = new JMenuItem("Cut");
+		cut.setActionCommand("cut");
+		cut.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_X, InputEvent.CTRL_DOWN_MASK));
+		cut.addActionListener(m);
+		
+		JMenuItem paste = new JMenuItem("Paste");
+		paste.setActionCommand("paste");
+		paste.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_V, InputEvent.CTRL_DOWN_MASK));
+		paste.addActionListener(m);
+		
+		JMenuItem find = new JMenuItem("Find");
+		find.setActionCommand("find");
+		find.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK));
+		find.addActionListener(m);
+		
+		JMenuItem cull = new JMenuItem("Cull Escaping Ships");
+		cull.setActionCommand("cull");
+		cull.addActionListener(m);
+		
 		
 		JMenu view = new JMenu("View");
 		
+		JMenuItem fit = new JMenuItem("Zoom to Fit");
+		fit.setActionCommand("fit");
+		fit.addActionListener(m);
+		
+		JMenuItem stats = new JMenuItem("Rendering Stats");
+		stats.setActionCommand("stats");
+		stats.addActionListener(m);
+		
 
 		file.add(newg); file.add(save); file.add(saveAs); file.add(open);
+		file.addSeparator(); file.add(record); file.add(replay);
+		edit.add(copy); edit.add(cut); edit.add(paste);
+		edit.addSeparator(); edit.add(find); edit.add(cull);
+		view.add(fit); view.add(stats);
 		mb.add(file);
+		mb.add(edit);
+		mb.add(view);
 
 		m.setJMenuBar(mb);
 		
@@ -133,8 +200,36 @@ public class Main extends JFrame implements ActionListener {
 			gm.write(true);
 			break;
 		case "load":
-			gm.read();
-			setTitle("CA Play - " + gm.getCurrentFile());
+			gm.read(); // Sets the title once the grid has been read
+			break;
+		case "record":
+			gm.record();
+			((JMenuItem) e.getSource()).setText(gm.nm.isRecording() ? "Stop Recording" : "Record Run");
+			break;
+		case "replay":
+			gm.openRecording();
+			break;
+		case "copy":
+			gm.copySelection(false);
+			break;
+		case "cut":
+			gm.copySelection(true);
+			break;
+		case "paste":
+			gm.paste();
+			break;
+		case "find":
+			gm.findPattern();
+			break;
+		case "cull":
+			gm.cullShips();
+			((JMenuItem) e.getSource()).setText(gm.nm.isCulling() ? "Stop Culling" : "Cull Escaping Ships");
+			break;
+		case "fit":
+			gm.zoomToFit();
+			break;
+		case "stats":
+			gm.showRenderStats();
 			break;
 		default:
 			break;
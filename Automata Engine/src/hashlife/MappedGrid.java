@@ -0,0 +1,381 @@
+/**
+ * MappedGrid stores a grid in a binary file laid out by QuadNode levels, which is opened by memory mapping it, so that opening a file takes the same time however
+ * large the grid is. Each distinct QuadNode is stored once, in the section of its level, as a fixed size record, so any QuadNode can be found from its index without
+ * reading anything else. The smallest QuadNodes are stored as their cells: 8x8 blocks for two state rules, or level 1 QuadNodes of states for rules with more.
+ * Larger QuadNodes store the indices of their children in the section below, starting at 1, with 0 for empty children.
+ *
+ * The file starts with a header giving the rule, the generation, and a table of the offset and record count of each level's section. The root is the only record of
+ * the top level.
+ *
+ * QuadNodes are only built into the canonical table when they're asked for. NodeManager reveals the grid a tile at a time as the viewport and queries reach it, so
+ * the parts of a huge file that are never looked at are never read. A MappedGrid can be revealed from more than one thread, so building and revealing are synchronized.
+ */
+
+package hashlife;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+public class MappedGrid {
+	private static final int MAGIC = 0x51545245; // "QTRE"
+	private static final int VERSION = 1;
+	private static final int LEAF_LEVEL = 3; // Level of the 8x8 blocks of two state patterns
+	private static final int TILE_LEVEL = 8; // Level of the tiles the grid is revealed in
+
+	final int level; // Level of the root
+	final long generation;
+	final String rule;
+	private final int leaf; // Level of the smallest QuadNodes
+	private final int tile; // Level of the tiles revealed at once
+	private final MappedByteBuffer[] sections; // The records of each level, starting at the leaf level
+	private final HashMap<Long, QuadNode> built = new HashMap<Long, QuadNode>(); // QuadNodes built so far, by level and index
+	private final HashSet<Tile> revealed = new HashSet<Tile>(); // Tiles that have been revealed
+
+	/**
+	 * The SW corner of a tile, in cells. Kept as two longs, since the tiles of a huge root can't be numbered in one.
+	 */
+	private static class Tile {
+		final long x, y;
+
+		Tile(long x, long y) {
+			this.x = x;
+			this.y = y;
+		}
+
+		public int hashCode() {
+			return Long.hashCode(x) * 31 + Long.hashCode(y);
+		}
+
+		public boolean equals(Object o) {
+			Tile t = (Tile) o;
+			return x == t.x && y == t.y;
+		}
+	}
+
+	/**
+	 * Constructor, which maps a file
+	 * @param path
+	 * @throws IOException if the file isn't a grid file of this kind
+	 */
+	private MappedGrid(String path) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 1 << 16));
+			if (header.remaining() < 8 || header.getInt() != MAGIC || header.getInt() != VERSION)
+				throw new IOException("Not a mapped grid file");
+			leaf = header.getInt();
+			level = header.getInt();
+			generation = header.getLong();
+			byte[] code = new byte[header.getShort()];
+			header.get(code);
+			rule = new String(code, StandardCharsets.UTF_8);
+			tile = Math.max(leaf, Math.min(TILE_LEVEL, level - 1));
+
+			sections = new MappedByteBuffer[level - leaf + 1];
+			for (int l = leaf; l <= level; l++) {
+				long offset = header.getLong(), size = header.getInt() * (long) recordSize(l);
+				if (size > Integer.MAX_VALUE)
+					throw new IOException("Level " + l + " is too large to map");
+				sections[l - leaf] = channel.map(FileChannel.MapMode.READ_ONLY, offset, size); // Stays valid once the channel is closed
+			}
+		}
+	}
+
+	/**
+	 * Opens a file without reading any of its QuadNodes
+	 * @param path
+	 * @return MappedGrid
+	 * @throws IOException if the file isn't a grid file of this kind
+	 */
+	public static MappedGrid open(String path) throws IOException {
+		return new MappedGrid(path);
+	}
+
+	/**
+	 * Gets the size of the records of a level
+	 * @param l
+	 * @return the number of bytes in each record
+	 */
+	private int recordSize(int l) {
+		return l == leaf ? (leaf == 1 ? 4 : 8) : 16;
+	}
+
+	/**
+	 * Gets the index of a child from a record
+	 * @param l the level of the record
+	 * @param index the index of the record, starting at 1
+	 * @param quadrant 0 for NW, 1 for NE, 2 for SW and 3 for SE
+	 * @return the index of the child, or 0 if it's empty
+	 */
+	private int child(int l, int index, int quadrant) {
+		return sections[l - leaf].getInt((index - 1) * 16 + 4 * quadrant);
+	}
+
+	/**
+	 * Builds a QuadNode from the file, along with its descendants
+	 * @param l
+	 * @param index the index of its record, or 0 for an empty QuadNode
+	 * @return QuadNode
+	 */
+	synchronized QuadNode node(int l, int index) {
+		if (index == 0)
+			return QuadNode.newEmpty(l);
+		long key = (long) l << 32 | index;
+		QuadNode q = built.get(key);
+		if (q != null)
+			return q;
+		ByteBuffer section = sections[l - leaf];
+		if (l == leaf && leaf == 1) {
+			int at = (index - 1) * 4;
+			q = QuadNode.newNode(QuadNode.newNode(section.get(at) & 0xFF), QuadNode.newNode(section.get(at + 1) & 0xFF), QuadNode.newNode(section.get(at + 2) & 0xFF),
+					QuadNode.newNode(section.get(at + 3) & 0xFF));
+		} else if (l == leaf) {
+			int at = (index - 1) * 8;
+			q = QuadNode.newNode(QuadNode.block(section.getShort(at) & 0xFFFF), QuadNode.block(section.getShort(at + 2) & 0xFFFF),
+					QuadNode.block(section.getShort(at + 4) & 0xFFFF), QuadNode.block(section.getShort(at + 6) & 0xFFFF));
+		} else
+			q = QuadNode.newNode(node(l - 1, child(l, index, 0)), node(l - 1, child(l, index, 1)), node(l - 1, child(l, index, 2)), node(l - 1, child(l, index, 3)));
+		built.put(key, q);
+		return q;
+	}
+
+	/**
+	 * Builds the whole grid
+	 * @return the root, centered on the origin
+	 */
+	public synchronized QuadNode root() {
+		return node(level, sections[level - leaf].capacity() == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Merges the tiles of the file that overlap a rectangle into a QuadNode, skipping tiles that have already been revealed. Once a tile has been revealed, the QuadNode
+	 * owns its cells, so edits made to them aren't undone by revealing them again.
+	 * @param q a QuadNode centered on the origin, at least as large as the file's root
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @return q with the tiles added
+	 */
+	public synchronized QuadNode reveal(QuadNode q, long x0, long y0, long x1, long y1) {
+		long corner = -(1L << (q.level - 1));
+		return reveal(q, corner, corner, -1, x0, y0, x1, y1);
+	}
+
+	/**
+	 * Merges every tile of the file that hasn't been revealed into a QuadNode, without marking the tiles as revealed, so the result can be thrown away if the QuadNode
+	 * changes in the meantime. Only building each QuadNode from the file is synchronized, so tiles can still be revealed by another thread while this runs.
+	 * @param q a QuadNode centered on the origin, at least as large as the file's root
+	 * @param progress counts parts of the file's root, and may be null
+	 * @return q with the rest of the file added
+	 * @throws IOException if the progress has been cancelled
+	 */
+	public QuadNode revealAll(QuadNode q, Progress progress) throws IOException {
+		long corner = -(1L << (q.level - 1));
+		int unit = Math.max(tile, level - 5); // Progress is counted in QuadNodes of this level, of which there are at most about a thousand
+		if (progress != null)
+			progress.start(1L << 2 * (level - unit));
+		return revealAll(q, corner, corner, -1, unit, progress);
+	}
+
+	/**
+	 * Merges the tiles that haven't been revealed into a QuadNode
+	 * @param q
+	 * @param x the west edge of q
+	 * @param y the south edge of q
+	 * @param index the index of the file's QuadNode in the same place as q, 0 if the file is empty there, or -1 if q is larger than the quadrants of the file's root
+	 * @param unit the level progress is counted in
+	 * @param progress
+	 * @return q with the tiles added
+	 * @throws IOException
+	 */
+	private QuadNode revealAll(QuadNode q, long x, long y, int index, int unit, Progress progress) throws IOException {
+		long side = 1L << q.level, edge = 1L << (level - 1);
+		if (index == -1 && (x >= edge || y >= edge || x + side <= -edge || y + side <= -edge))
+			return q;
+		if (index == -1 && q.level == level - 1) {
+			int quadrant = x < 0 ? (y < 0 ? 2 : 0) : (y < 0 ? 3 : 1);
+			index = sections[level - leaf].capacity() == 0 ? 0 : child(level, 1, quadrant);
+			return revealAll(q, x, y, index, unit, progress);
+		}
+
+		QuadNode result = q;
+		if (index != 0 && q.level == tile) {
+			if (!isRevealed(x, y))
+				result = QuadNode.union(q, node(tile, index));
+		} else if (index != 0) {
+			long half = side / 2;
+			boolean above = index == -1;
+			QuadNode nw = revealAll(q.nw, x, y + half, above ? -1 : child(q.level, index, 0), unit, progress);
+			QuadNode ne = revealAll(q.ne, x + half, y + half, above ? -1 : child(q.level, index, 1), unit, progress);
+			QuadNode sw = revealAll(q.sw, x, y, above ? -1 : child(q.level, index, 2), unit, progress);
+			QuadNode se = revealAll(q.se, x + half, y, above ? -1 : child(q.level, index, 3), unit, progress);
+			if (nw != q.nw || ne != q.ne || sw != q.sw || se != q.se)
+				result = QuadNode.newNode(nw, ne, sw, se);
+		}
+		if (progress != null && index != -1 && (q.level == unit || (index == 0 && q.level > unit)))
+			progress.advance(1L << 2 * (q.level - unit));
+		return result;
+	}
+
+	/**
+	 * Checks whether a tile has been revealed
+	 * @param x the west edge of the tile
+	 * @param y the south edge of the tile
+	 * @return boolean
+	 */
+	private synchronized boolean isRevealed(long x, long y) {
+		return revealed.contains(new Tile(x, y));
+	}
+
+	/**
+	 * Reveals the tiles in a QuadNode
+	 * @param q
+	 * @param x the west edge of q
+	 * @param y the south edge of q
+	 * @param index the index of the file's QuadNode in the same place as q, 0 if the file is empty there, or -1 if q is larger than the quadrants of the file's root
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @return q with the tiles added
+	 */
+	private QuadNode reveal(QuadNode q, long x, long y, int index, long x0, long y0, long x1, long y1) {
+		long side = 1L << q.level, edge = 1L << (level - 1); // Half the side of the file's root
+		if (index == 0 || x > x1 || y > y1 || x + side - 1 < x0 || y + side - 1 < y0)
+			return q;
+		if (index == -1 && (x >= edge || y >= edge || x + side <= -edge || y + side <= -edge)) // Outside the file's root
+			return q;
+		if (index == -1 && q.level == level - 1) { // Finds which quadrant of the file's root q is
+			int quadrant = x < 0 ? (y < 0 ? 2 : 0) : (y < 0 ? 3 : 1);
+			index = sections[level - leaf].capacity() == 0 ? 0 : child(level, 1, quadrant);
+			return reveal(q, x, y, index, x0, y0, x1, y1);
+		}
+		if (q.level == tile) {
+			if (!revealed.add(new Tile(x, y)))
+				return q;
+			return QuadNode.union(q, node(tile, index));
+		}
+
+		long half = side / 2;
+		boolean above = index == -1;
+		QuadNode nw = reveal(q.nw, x, y + half, above ? -1 : child(q.level, index, 0), x0, y0, x1, y1);
+		QuadNode ne = reveal(q.ne, x + half, y + half, above ? -1 : child(q.level, index, 1), x0, y0, x1, y1);
+		QuadNode sw = reveal(q.sw, x, y, above ? -1 : child(q.level, index, 2), x0, y0, x1, y1);
+		QuadNode se = reveal(q.se, x + half, y, above ? -1 : child(q.level, index, 3), x0, y0, x1, y1);
+		if (nw == q.nw && ne == q.ne && sw == q.sw && se == q.se)
+			return q;
+		return QuadNode.newNode(nw, ne, sw, se);
+	}
+
+	/**
+	 * Writes a grid to a file
+	 * @param path
+	 * @param root a QuadNode centered on the origin
+	 * @param generation
+	 * @param rule
+	 * @param progress counts the live cells of the QuadNodes numbered so far, and may be null
+	 * @throws IOException
+	 */
+	public static void write(String path, QuadNode root, long generation, String rule, Progress progress) throws IOException {
+		int leaf = new Transitions(rule).states > 2 ? 1 : LEAF_LEVEL; // Taken from the rule being written, which may not be the current one
+		while (root.level <= leaf)
+			root = root.expand();
+
+		ArrayList<ArrayList<QuadNode>> levels = new ArrayList<ArrayList<QuadNode>>(); // The distinct QuadNodes of each level, in the order they're written
+		for (int l = leaf; l <= root.level; l++)
+			levels.add(new ArrayList<QuadNode>());
+		HashMap<QuadNode, Integer> ids = new HashMap<QuadNode, Integer>();
+		if (progress != null)
+			progress.start(root.population);
+		number(root, leaf, ids, levels, progress);
+		for (int l = leaf; l <= root.level; l++) // Each level's section is mapped in one piece when the file is opened
+			if ((long) levels.get(l - leaf).size() * (l == leaf ? (leaf == 1 ? 4 : 8) : 16) > Integer.MAX_VALUE)
+				throw new IOException("Level " + l + " has too many distinct QuadNodes for a mapped grid file");
+
+		byte[] code = rule.getBytes(StandardCharsets.UTF_8);
+		long offset = 4 + 4 + 4 + 4 + 8 + 2 + code.length + 12L * levels.size();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(leaf);
+			out.writeInt(root.level);
+			out.writeLong(generation);
+			out.writeShort(code.length);
+			out.write(code);
+			for (int l = leaf; l <= root.level; l++) {
+				int count = levels.get(l - leaf).size();
+				out.writeLong(offset);
+				out.writeInt(count);
+				offset += (long) count * (l == leaf ? (leaf == 1 ? 4 : 8) : 16);
+			}
+
+			for (int l = leaf; l <= root.level; l++)
+				for (QuadNode q: levels.get(l - leaf)) {
+					if (l == leaf && leaf == 1) {
+						out.writeByte(q.nw.state);
+						out.writeByte(q.ne.state);
+						out.writeByte(q.sw.state);
+						out.writeByte(q.se.state);
+					} else if (l == leaf) {
+						out.writeShort(q.nw.cellBits());
+						out.writeShort(q.ne.cellBits());
+						out.writeShort(q.sw.cellBits());
+						out.writeShort(q.se.cellBits());
+					} else {
+						out.writeInt(id(q.nw, ids));
+						out.writeInt(id(q.ne, ids));
+						out.writeInt(id(q.sw, ids));
+						out.writeInt(id(q.se, ids));
+					}
+				}
+		}
+	}
+
+	/**
+	 * Numbers a QuadNode and its descendants within their levels, unless it has already been numbered
+	 * @param q
+	 * @param leaf the level of the smallest QuadNodes
+	 * @param ids the index of each QuadNode numbered so far, starting at 1 in each level
+	 * @param levels the QuadNodes of each level in the order they were numbered
+	 * @param progress may be null
+	 * @throws IOException if the save has been cancelled
+	 */
+	private static void number(QuadNode q, int leaf, HashMap<QuadNode, Integer> ids, ArrayList<ArrayList<QuadNode>> levels, Progress progress) throws IOException {
+		if (q.state == 0)
+			return;
+		if (progress != null && (q.level == leaf || ids.containsKey(q)))
+			progress.advance(q.population);
+		if (ids.containsKey(q))
+			return;
+		if (q.level > leaf) {
+			number(q.nw, leaf, ids, levels, progress);
+			number(q.ne, leaf, ids, levels, progress);
+			number(q.sw, leaf, ids, levels, progress);
+			number(q.se, leaf, ids, levels, progress);
+		}
+		ArrayList<QuadNode> list = levels.get(q.level - leaf);
+		list.add(q);
+		ids.put(q, list.size());
+	}
+
+	/**
+	 * Gets the index of a QuadNode
+	 * @param q
+	 * @param ids
+	 * @return the index, or 0 if q is empty
+	 */
+	private static int id(QuadNode q, HashMap<QuadNode, Integer> ids) {
+		return q.state == 0 ? 0 : ids.get(q);
+	}
+}
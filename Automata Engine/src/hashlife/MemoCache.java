@@ -0,0 +1,224 @@
+/**
+ * MemoCache saves the canonical QuadNodes that have been evolved under a rule, along with their results, so that the next session running the same rule starts with
+ * warm caches instead of evolving everything from scratch.
+ *
+ * Each rule has its own compressed file in the cache folder, named after a 64-bit hash of its code. Nodes are written children first, so loading a cache rebuilds them through
+ * newNode and they are matched to existing nodes by their contents. The results of 4x4 nodes aren't saved, since the rule's compiled table recomputes them instantly.
+ *
+ * The results are gathered when a cache is saved, but the file is written on a background thread so that switching rules doesn't wait for it. Loading a cache waits
+ * for any write still in progress. A rule whose results are cleared is forgotten, so switching back to it loads its cache again instead of overwriting the cache with
+ * only the results found since.
+ */
+
+package hashlife;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class MemoCache {
+	private static final int MAGIC = 0x4D454D4F; // "MEMO"
+	private static final int VERSION = 1;
+	private static final int MIN_LEVEL = 3; // Smallest level whose results are saved
+
+	static boolean enabled = !"false".equals(System.getProperty("hashlife.memo")); // Can be turned off with -Dhashlife.memo=false
+	private static HashSet<String> loaded = new HashSet<String>(); // Rules whose results are in memory, so their caches don't need to be loaded again
+	private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "Memo cache writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static HashMap<String, Future<?>> pending = new HashMap<String, Future<?>>(); // The last write of each rule's cache, which may still be in progress
+
+	/**
+	 * Gets the cache file of a rule
+	 * @param code
+	 * @return File
+	 */
+	static File file(String code) {
+		long hash = 0xCBF29CE484222325L; // 64-bit FNV-1a, since String.hashCode is the same for rules like 23/3V and 23/47
+		for (int i = 0; i < code.length(); i++)
+			hash = (hash ^ code.charAt(i)) * 0x100000001B3L;
+		return new File(System.getProperty("user.dir") + "\\cache\\" + String.format("%016x", hash) + ".memo");
+	}
+
+	/**
+	 * Loads the saved results of the current rule, if it has a cache that hasn't been loaded yet
+	 * @return the number of results loaded
+	 */
+	public static synchronized int load() {
+		String code = NodeManager.t.getCode();
+		if (!enabled || loaded.contains(code))
+			return 0;
+		flush(code); // The cache may still be being written from when the rule was last used
+		File f = file(code);
+		if (!f.exists())
+			return 0;
+		loaded.add(code);
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(f), 1 << 16)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(code)) // A different rule with the same hash, or an old cache
+				return 0;
+
+			QuadNode[] nodes = new QuadNode[in.readInt() + 1]; // Ids start at 1
+			for (int i = 1; i < nodes.length; i++) {
+				if (in.readUnsignedByte() == 0)
+					nodes[i] = QuadNode.newNode(in.readUnsignedByte());
+				else
+					nodes[i] = QuadNode.newNode(nodes[in.readInt()], nodes[in.readInt()], nodes[in.readInt()], nodes[in.readInt()]);
+			}
+
+			int results = in.readInt();
+			for (int i = 0; i < results; i++) {
+				QuadNode q = nodes[in.readInt()];
+				q.result = nodes[in.readInt()];
+				q.updatedToTransition = true;
+			}
+			return results;
+		} catch (Exception e) {
+			e.printStackTrace();
+			return 0;
+		}
+	}
+
+	/**
+	 * Saves the nodes that have results under the current rule, replacing the rule's old cache. The results are gathered right away, and the file is written in the
+	 * background.
+	 * @return the number of results being saved
+	 */
+	public static synchronized int save() {
+		if (!enabled)
+			return 0;
+		String code = NodeManager.t.getCode();
+
+		ArrayList<QuadNode> evolved = new ArrayList<QuadNode>();
+		try {
+			for (QuadNode q: QuadNode.hashMap.keySet())
+				if (q.level >= MIN_LEVEL && q.result != null && q.updatedToTransition)
+					evolved.add(q);
+		} catch (Exception e) { // The grid might be evolving while the cache is saved
+			e.printStackTrace();
+			return 0;
+		}
+		if (evolved.isEmpty())
+			return 0;
+		QuadNode[] results = new QuadNode[evolved.size()];
+		for (int i = 0; i < results.length; i++) // Taken now, since the next rule clears them
+			results[i] = evolved.get(i).result;
+		loaded.add(code);
+		pending.put(code, writer.submit(() -> write(code, evolved, results)));
+		return evolved.size();
+	}
+
+	/**
+	 * Waits for every cache being written to be finished
+	 */
+	public static synchronized void flush() {
+		for (String code: new ArrayList<String>(pending.keySet()))
+			flush(code);
+	}
+
+	/**
+	 * Waits for a rule's cache to be finished, if it's being written
+	 * @param code
+	 */
+	private static void flush(String code) {
+		Future<?> write = pending.remove(code);
+		try {
+			if (write != null)
+				write.get();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Forgets that a rule's results are in memory, once they've been cleared, so its cache is loaded again the next time the rule is used
+	 * @param code
+	 */
+	public static synchronized void forget(String code) {
+		loaded.remove(code);
+	}
+
+	/**
+	 * Writes a rule's cache file
+	 * @param code
+	 * @param evolved nodes with results
+	 * @param found their results
+	 */
+	private static void write(String code, ArrayList<QuadNode> evolved, QuadNode[] found) {
+		HashMap<QuadNode, Integer> ids = new HashMap<QuadNode, Integer>();
+		ArrayList<QuadNode> order = new ArrayList<QuadNode>(); // Nodes in the order they're written, with children before parents
+		int[] results = new int[2 * evolved.size()];
+		for (int i = 0; i < evolved.size(); i++) {
+			QuadNode q = evolved.get(i);
+			results[2 * i] = number(q, ids, order);
+			results[2 * i + 1] = number(found[i], ids, order);
+		}
+
+		File f = file(code);
+		f.getParentFile().mkdirs();
+		File temp = new File(f.getPath() + ".tmp"); // Written first so that a crash never leaves a broken cache behind
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp), 1 << 16)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(code);
+			out.writeInt(order.size());
+			for (QuadNode q: order) {
+				out.writeByte(q.level == 0 ? 0 : 1);
+				if (q.level == 0)
+					out.writeByte(q.state);
+				else {
+					out.writeInt(ids.get(q.nw));
+					out.writeInt(ids.get(q.ne));
+					out.writeInt(ids.get(q.sw));
+					out.writeInt(ids.get(q.se));
+				}
+			}
+			out.writeInt(evolved.size());
+			for (int r: results)
+				out.writeInt(r);
+		} catch (IOException e) {
+			e.printStackTrace();
+			temp.delete();
+			return;
+		}
+		f.delete();
+		temp.renameTo(f);
+	}
+
+	/**
+	 * Assigns ids to a node and its descendants that don't have one yet
+	 * @param q
+	 * @param ids
+	 * @param order
+	 * @return the id of q
+	 */
+	private static int number(QuadNode q, HashMap<QuadNode, Integer> ids, ArrayList<QuadNode> order) {
+		Integer id = ids.get(q);
+		if (id != null)
+			return id;
+		if (q.level > 0) {
+			number(q.nw, ids, order);
+			number(q.ne, ids, order);
+			number(q.sw, ids, order);
+			number(q.se, ids, order);
+		}
+		order.add(q);
+		ids.put(q, order.size());
+		return order.size();
+	}
+}
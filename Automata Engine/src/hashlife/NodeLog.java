@@ -0,0 +1,223 @@
+/**
+ * NodeLog records a run as an append-only file of QuadNodes. Since the roots of consecutive generations share almost all of their nodes, each checkpoint only appends
+ * the nodes that haven't been logged yet, followed by a pointer to the root, so a checkpoint costs about as much as the change since the last one.
+ *
+ * The file starts with a header, followed by records of four kinds: cells, nodes (whose children are ids of earlier records), roots, and rule changes. Cells and nodes
+ * are numbered from 1 in the order they appear. Replaying the file rebuilds every root in the canonical table, which allows a crashed run to be resumed or a recorded run
+ * to be scrubbed through. A record cut off by a crash is dropped when the log is opened again for appending. Logs can also be read without opening them for appending,
+ * which leaves a log that is still being recorded untouched.
+ */
+
+package hashlife;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class NodeLog {
+	private static final int MAGIC = 0x4E4C4F47; // "NLOG"
+	private static final int VERSION = 1;
+	private static final byte CELL = 0, NODE = 1, ROOT = 2, RULE = 3; // Record tags
+
+	private final DataOutputStream out; // Null if the log is only being read
+	private final HashMap<QuadNode, Integer> ids = new HashMap<QuadNode, Integer>(); // Ids of the nodes already in the log
+	private final ArrayList<QuadNode> nodes = new ArrayList<QuadNode>(); // Nodes in the log, where nodes.get(i) has id i + 1
+	private final ArrayList<Frame> frames = new ArrayList<Frame>(); // Every root in the log, in order
+	private String rule; // The rule of the last frame
+
+	/**
+	 * A root from the log, along with the generation it was logged at and the rule it was evolved under
+	 */
+	public static class Frame {
+		final long generation;
+		final QuadNode root;
+		final String rule;
+
+		Frame(long generation, QuadNode root, String rule) {
+			this.generation = generation;
+			this.root = root;
+			this.rule = rule;
+		}
+	}
+
+	/**
+	 * Opens a log for appending, replaying whatever it already holds
+	 * @param path
+	 * @throws IOException
+	 */
+	private NodeLog(String path) throws IOException {
+		long valid = replay(path);
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+			file.setLength(valid); // Drops a record that was cut off
+		}
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path, true)));
+		if (valid == 0) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Constructor, for a log that is only read
+	 */
+	private NodeLog() {
+		out = null;
+	}
+
+	/**
+	 * Opens the log at a path, creating it if it doesn't exist. New checkpoints are appended to the end of an existing log.
+	 * @param path
+	 * @return NodeLog
+	 * @throws IOException if the file can't be read or isn't a node log
+	 */
+	public static NodeLog open(String path) throws IOException {
+		return new NodeLog(path);
+	}
+
+	/**
+	 * Reads the frames of a log without changing the file, so a log that is still being recorded can be viewed. A record cut off at the end is skipped.
+	 * @param path
+	 * @return every complete root in the log, in order
+	 * @throws IOException if the file can't be read or isn't a node log
+	 */
+	public static ArrayList<Frame> read(String path) throws IOException {
+		if (!new File(path).exists())
+			throw new IOException(path + " doesn't exist");
+		NodeLog log = new NodeLog();
+		log.replay(path);
+		return log.frames;
+	}
+
+	/**
+	 * Reads every complete record in a log
+	 * @param path
+	 * @return the length in bytes of the complete records, including the header
+	 * @throws IOException
+	 */
+	private long replay(String path) throws IOException {
+		if (!new File(path).exists())
+			return 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+			long valid = 0;
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION)
+					throw new IOException(path + " isn't a node log");
+				valid = 8;
+				while (true) {
+					byte tag = in.readByte();
+					switch (tag) {
+					case CELL:
+						addNode(QuadNode.newNode(in.readUnsignedByte()));
+						valid += 2;
+						break;
+					case NODE:
+						in.readUnsignedByte(); // The level, which is implied by the children
+						QuadNode nw = nodes.get(in.readInt() - 1), ne = nodes.get(in.readInt() - 1), sw = nodes.get(in.readInt() - 1), se = nodes.get(in.readInt() - 1);
+						addNode(QuadNode.newNode(nw, ne, sw, se));
+						valid += 18;
+						break;
+					case ROOT:
+						long generation = in.readLong();
+						frames.add(new Frame(generation, nodes.get(in.readInt() - 1), rule));
+						valid += 13;
+						break;
+					case RULE:
+						byte[] code = new byte[in.readUnsignedShort()];
+						in.readFully(code);
+						rule = new String(code, StandardCharsets.UTF_8);
+						valid += 3 + code.length;
+						break;
+					default:
+						throw new IOException("Unknown record in " + path);
+					}
+				}
+			} catch (EOFException e) {} // The end of the log, possibly in the middle of a record
+			return valid;
+		}
+	}
+
+	/**
+	 * Assigns the next id to a node
+	 * @param q
+	 */
+	private void addNode(QuadNode q) {
+		nodes.add(q);
+		ids.put(q, nodes.size());
+	}
+
+	/**
+	 * Appends the nodes of a root that aren't in the log yet, followed by the root itself, and flushes the log
+	 * @param root
+	 * @param generation
+	 * @throws IOException
+	 */
+	public void checkpoint(QuadNode root, long generation) throws IOException {
+		String code = NodeManager.t.getCode();
+		if (!code.equals(rule)) { // Records rule changes so that replayed frames evolve the same way
+			byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+			out.writeByte(RULE);
+			out.writeShort(bytes.length);
+			out.write(bytes);
+			rule = code;
+		}
+		int id = write(root);
+		out.writeByte(ROOT);
+		out.writeLong(generation);
+		out.writeInt(id);
+		out.flush();
+		frames.add(new Frame(generation, root, rule));
+	}
+
+	/**
+	 * Appends a node and its descendants, skipping any that are already in the log
+	 * @param q
+	 * @return the id of q
+	 * @throws IOException
+	 */
+	private int write(QuadNode q) throws IOException {
+		Integer id = ids.get(q);
+		if (id != null)
+			return id;
+		if (q.level == 0) {
+			out.writeByte(CELL);
+			out.writeByte(q.state);
+		} else {
+			int nw = write(q.nw), ne = write(q.ne), sw = write(q.sw), se = write(q.se);
+			out.writeByte(NODE);
+			out.writeByte(q.level);
+			out.writeInt(nw);
+			out.writeInt(ne);
+			out.writeInt(sw);
+			out.writeInt(se);
+		}
+		addNode(q);
+		return nodes.size();
+	}
+
+	/**
+	 * Getter for frames
+	 * @return every root in the log, in the order they were logged
+	 */
+	public ArrayList<Frame> getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Closes the log
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		out.close();
+	}
+}
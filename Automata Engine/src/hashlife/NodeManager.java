@@ -7,30 +7,35 @@
 
 package hashlife;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import hashlife.QuadNode;
 
 public class NodeManager {
-	QuadNode root; // The QuadNode corresponding to the entire grid
+	volatile QuadNode root; // The QuadNode corresponding to the entire grid
 	ArrayList<QuadNode> undoStack = new ArrayList<QuadNode>(), // Experimental feature to let the user undo and redo actions; not implemented
 						redoStack = new ArrayList<QuadNode>();
 	static Transitions t = new Transitions(); // Transitions used to determine cell evolution
-	int minX, minY = Integer.MAX_VALUE; // Store the minimum and maximum coordinates for the grid
-	int maxX, maxY = Integer.MIN_VALUE;
+	volatile long generation; // Number of generations evolved since the grid was created
+	private NodeLog log; // Records checkpoints of the run while it isn't null
+	private int logInterval; // Number of generations between checkpoints
+	private ShipCuller culler; // Removes ships that have escaped the main pattern while it isn't null
+	private int cullInterval; // Number of generations between culls
+	private volatile MappedGrid mapped; // The file the grid was opened from, while some of its cells haven't been revealed yet
 		
 	/**
 	 * Default constructor
 	 * Initializes Conway's Life
 	 */
 	public NodeManager() {
-		t = new Transitions();		
+		setRule(new Transitions());
 		init();
 	}
 	
 	/**
 	 * Overloaded constructor
 	 * Reads in a string of the form X/YC, where X and Y are any number of digits and C is a character denoting the type of neighborhood, and creates the appropriates rules
-	 * The X digits specify rules for cell survival and the Y digits specify rules for cell birth
+	 * The X digits specify rules for cell survival and the Y digits specify rules for cell birth. See Transitions for Hensel, Generations, and MAP codes.
 	 * @param code 
 	 */
 	public NodeManager(String code) {
@@ -55,18 +60,153 @@ public class NodeManager {
 	public void setCell(int x, int y, boolean alive) {
 		if (Math.abs(x) >= 1 << (root.level - 1) || Math.abs(y) >= 1 << (root.level - 1)) // If the cell being set is currently outside the root node, expand until the root encompasses
 			expandRoot(Math.max(Math.abs(x), Math.abs(y)));
+		reveal(x, y, x, y);
 		root = root.setCell(x, y, alive);
-		if (alive)
-			setMinMaxCoords(x, y);	
 	}
 	
 	public void flipCell(int x, int y) {
 		if (Math.abs(x) >= 1 << (root.level - 1) || Math.abs(y) >= 1 << (root.level - 1)) // If the cell being set is currently outside the root node, expand until the root encompasses
 			expandRoot(Math.max(Math.abs(x), Math.abs(y)));
+		reveal(x, y, x, y);
 		root = root.flipCell(x, y);
-		setMinMaxCoords(x, y);	
 	}
 	
+	/**
+	 * Brings a batch of cells to life in one operation, building them into a QuadNode from the bottom up and merging it into the root
+	 * @param cells coordinates of the cells, as x0, y0, x1, y1, ...
+	 * @param count the number of cells
+	 */
+	public void addCells(int[] cells, int count) {
+		if (count == 0)
+			return;
+		if (mapped != null) {
+			int[] box = box(cells, count);
+			reveal(box[0], box[1], box[2], box[3]);
+		}
+		root = addCells(root, cells, count);
+	}
+
+	/**
+	 * Brings a batch of cells to life in a root that isn't the grid's, such as one being loaded in the background
+	 * @param root a QuadNode centered on the origin
+	 * @param cells coordinates of the cells, as x0, y0, x1, y1, ...
+	 * @param count the number of cells
+	 * @return the root with the cells added, expanded to hold them
+	 */
+	static QuadNode addCells(QuadNode root, int[] cells, int count) {
+		if (count == 0)
+			return root;
+		int[] box = box(cells, count);
+		int size = Math.max(Math.max(Math.abs(box[0]), Math.abs(box[2])), Math.max(Math.abs(box[1]), Math.abs(box[3])));
+		while (1 << (root.level - 1) <= size)
+			root = root.expand();
+		return QuadNode.union(root, QuadNode.build(cells, count, root.level));
+	}
+
+	/**
+	 * Gets the bounding box of a list of cells
+	 * @param cells coordinates of the cells, as x0, y0, x1, y1, ...
+	 * @param count the number of cells, at least 1
+	 * @return {minX, minY, maxX, maxY}
+	 */
+	private static int[] box(int[] cells, int count) {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < 2 * count; i += 2) {
+			minX = Math.min(minX, cells[i]);
+			maxX = Math.max(maxX, cells[i]);
+			minY = Math.min(minY, cells[i + 1]);
+			maxY = Math.max(maxY, cells[i + 1]);
+		}
+		return new int[] {minX, minY, maxX, maxY};
+	}
+	
+	/**
+	 * Merges a Patch into the grid
+	 * @param patch
+	 * @param dx how far to move the Patch from its own coordinates
+	 * @param dy
+	 * @param mode OR places the Patch's cells, XOR toggles them, and AND_NOT erases them
+	 */
+	public void stamp(Patch patch, int dx, int dy, QuadNode.mergeModes mode) {
+		expandToRect(patch.left + dx, patch.bottom + dy, patch.left + dx + patch.width - 1, patch.bottom + dy + patch.height - 1);
+		root = QuadNode.merge(root, patch.place(root.level, dx, dy), mode);
+	}
+
+	/**
+	 * Copies a rectangle of the grid
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @return Patch
+	 */
+	public Patch copy(int x0, int y0, int x1, int y1) {
+		reveal(x0, y0, x1, y1);
+		return Patch.copy(root, x0, y0, x1, y1);
+	}
+
+	/**
+	 * Replaces a rectangle of the grid with a Patch
+	 * @param patch
+	 * @param x west edge of where the Patch goes
+	 * @param y south edge of where the Patch goes
+	 */
+	public void paste(Patch patch, int x, int y) {
+		fillRect(x, y, x + patch.width - 1, y + patch.height - 1, false);
+		stamp(patch, x - patch.left, y - patch.bottom, QuadNode.mergeModes.OR);
+	}
+
+	/**
+	 * Sets every cell in a rectangle to alive or dead
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @param alive
+	 */
+	public void fillRect(int x0, int y0, int x1, int y1, boolean alive) {
+		expandToRect(x0, y0, x1, y1);
+		root = root.fillRect(x0, y0, x1, y1, alive);
+	}
+
+	/**
+	 * Inverts every cell in a rectangle
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 */
+	public void invertRect(int x0, int y0, int x1, int y1) {
+		expandToRect(x0, y0, x1, y1);
+		root = root.invertRect(x0, y0, x1, y1);
+	}
+
+	/**
+	 * Randomizes every cell in a rectangle
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @param density the chance that each cell is alive
+	 * @param seed the same seed always gives the same cells
+	 */
+	public void randomRect(int x0, int y0, int x1, int y1, double density, long seed) {
+		expandToRect(x0, y0, x1, y1);
+		root = root.randomRect(x0, y0, x1, y1, density, seed);
+	}
+
+	/**
+	 * Expands the root to encompass a rectangle
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 */
+	private void expandToRect(int x0, int y0, int x1, int y1) {
+		expandRoot(Math.max(Math.max(Math.abs(x0), Math.abs(x1)), Math.max(Math.abs(y0), Math.abs(y1))));
+		reveal(x0, y0, x1, y1); // Edits own the cells they touch, so the file can't bring back what they change
+	}
+
 	/**
 	 * Gets the state of a cell in the grid
 	 * @param x
@@ -74,15 +214,94 @@ public class NodeManager {
 	 * @return boolean
 	 */
 	public boolean getCell(int x, int y) {
+		reveal(x, y, x, y);
 		return root.getCell(x, y, root);
 	}
 	
 	/**
-	 * Sets the transition rule (S/BN format)
+	 * Counts the live cells in a rectangle
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @return number of live cells
+	 */
+	public long countCells(int x0, int y0, int x1, int y1) {
+		reveal(x0, y0, x1, y1);
+		return root.countRect(x0, y0, x1, y1);
+	}
+
+	/**
+	 * Finds every occurrence of a pattern on the grid, in any orientation
+	 * @param pattern
+	 * @param isolated whether occurrences must be surrounded by dead cells
+	 * @return the occurrences, as {x, y, transform}, where (x, y) is the SW corner of the transformed pattern
+	 */
+	public ArrayList<int[]> find(Patch pattern, boolean isolated) {
+		materialize();
+		return new PatternSearch(pattern, isolated).find(root);
+	}
+
+	/**
+	 * Streams the live cells in a rectangle
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @return CellIterator
+	 */
+	public CellIterator cells(int x0, int y0, int x1, int y1) {
+		reveal(x0, y0, x1, y1);
+		return new CellIterator(root, x0, y0, x1, y1);
+	}
+
+	/**
+	 * Streams every live cell in the grid
+	 * @return CellIterator
+	 */
+	public CellIterator cells() {
+		materialize();
+		return cells(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Gets the coordinates of the live cells in a rectangle
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @return the coordinates, as x0, y0, x1, y1, ...
+	 */
+	public int[] getCells(int x0, int y0, int x1, int y1) {
+		int[] cells = new int[Math.toIntExact(2 * countCells(x0, y0, x1, y1))];
+		CellIterator it = cells(x0, y0, x1, y1);
+		for (int i = 0; it.next(); i += 2) {
+			cells[i] = it.getX();
+			cells[i + 1] = it.getY();
+		}
+		return cells;
+	}
+
+	/**
+	 * Sets the transition rule (S/BN format). The results of the old rule are saved to its memo cache, and the new rule's cache is loaded. Synchronized so that the
+	 * rule never changes in the middle of a generation.
 	 * @param code
 	 */
-	public void setRule(String code) {
-		t = new Transitions(code);
+	public synchronized void setRule(String code) {
+		setRule(new Transitions(code));
+	}
+
+	/**
+	 * Replaces the transitions, clearing the results of the old rule if it's a different one
+	 * @param next
+	 */
+	private static void setRule(Transitions next) {
+		if (!next.getCode().equals(t.getCode())) {
+			MemoCache.save();
+			Transitions.clearQuadCache();
+		}
+		t = next;
+		MemoCache.load();
 	}
 	
 	/**
@@ -93,29 +312,252 @@ public class NodeManager {
 		while (1 << (root.level - 1) <= size)
 			root = root.expand();
 	}
+
+	/**
+	 * Replaces the grid with a mapped file without reading it. Its cells are revealed as the viewport and queries reach them.
+	 * @param grid the file, or null to replace the grid with an empty one
+	 */
+	public synchronized void open(MappedGrid grid) {
+		mapped = grid;
+		if (grid == null) {
+			init();
+			return;
+		}
+		if (!grid.rule.equals(t.getCode()) && Transitions.isValid(grid.rule))
+			setRule(grid.rule);
+		root = QuadNode.newEmpty(Math.max(grid.level, 8));
+		generation = grid.generation;
+	}
+
+	/**
+	 * Replaces the grid, its generation and its rule all at once, so the game loop never evolves a mix of the old grid and the new one
+	 * @param root a QuadNode centered on the origin
+	 * @param generation
+	 * @param rule the rule's code, or null to keep the current rule
+	 */
+	public synchronized void replace(QuadNode root, long generation, String rule) {
+		if (rule != null && !rule.equals(t.getCode()) && Transitions.isValid(rule))
+			setRule(rule);
+		mapped = null;
+		this.root = root;
+		this.generation = generation;
+	}
+
+	/**
+	 * Takes the grid, its generation and its rule as they are at one moment, revealing the rest of a mapped file first
+	 * @param progress shows how much of a mapped file has been revealed, and may be null
+	 * @return NodeLog.Frame
+	 * @throws IOException if the progress has been cancelled
+	 */
+	public NodeLog.Frame snapshot(Progress progress) throws IOException {
+		while (true) {
+			materialize(progress);
+			synchronized (this) {
+				if (mapped == null) // Another file may have been opened in the meantime
+					return new NodeLog.Frame(generation, root, t.getCode());
+			}
+		}
+	}
+
+	/**
+	 * Reveals the cells of the mapped file in a rectangle, if a file is open. Synchronized with materialize and evolving, since drawing reveals cells on the Event
+	 * Dispatch Thread while the game loop may be evolving the grid.
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 */
+	public void reveal(long x0, long y0, long x1, long y1) {
+		if (mapped == null) // Nothing left to reveal, so drawing doesn't wait for the grid to evolve
+			return;
+		synchronized (this) {
+			MappedGrid m = mapped;
+			if (m != null)
+				root = m.reveal(root, x0, y0, x1, y1);
+		}
+	}
+
+	/**
+	 * Reveals the rest of the mapped file and lets it go, for operations that need the whole grid
+	 */
+	public void materialize() {
+		try {
+			materialize(null);
+		} catch (IOException e) { // Only thrown when the progress is cancelled
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reveals the rest of the mapped file and lets it go. The file is read without holding the lock, so the grid can still be drawn in the meantime, and it's read again
+	 * into the new root if the grid changes before it's finished, reusing the QuadNodes already built.
+	 * @param progress may be null
+	 * @throws IOException if the progress has been cancelled
+	 */
+	public void materialize(Progress progress) throws IOException {
+		while (mapped != null) {
+			MappedGrid m;
+			QuadNode before;
+			synchronized (this) {
+				m = mapped;
+				before = root;
+			}
+			if (m == null)
+				return;
+			QuadNode after = m.revealAll(before, progress);
+			synchronized (this) {
+				if (mapped == m && root == before) {
+					root = after;
+					mapped = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether part of the grid is still in a mapped file
+	 * @return boolean
+	 */
+	public boolean isMapped() {
+		return mapped != null;
+	}
+
+	/**
+	 * Starts recording checkpoints of the run to a node log, continuing the log if it already exists
+	 * @param path
+	 * @param interval number of generations between checkpoints
+	 * @throws IOException
+	 */
+	public void startRecording(String path, int interval) throws IOException {
+		stopRecording();
+		NodeLog opened = NodeLog.open(path);
+		materialize();
+		opened.checkpoint(root, generation); // The starting point of the recording
+		logInterval = Math.max(interval, 1);
+		log = opened;
+	}
+
+	/**
+	 * Stops recording, if a recording is in progress
+	 */
+	public void stopRecording() {
+		if (log == null)
+			return;
+		try {
+			log.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		log = null;
+	}
+
+	/**
+	 * Checks whether the run is being recorded
+	 * @return boolean
+	 */
+	public boolean isRecording() {
+		return log != null;
+	}
+
+	/**
+	 * Starts removing known ships that fly farther than a distance from the main pattern, then shrinking the root to fit what's left
+	 * @param distance
+	 * @param interval number of generations between culls
+	 */
+	public void startCulling(int distance, int interval) {
+		culler = new ShipCuller(distance);
+		cullInterval = Math.max(interval, 1);
+	}
+
+	/**
+	 * Stops removing ships
+	 * @return the culler that was running, or null if there wasn't one
+	 */
+	public ShipCuller stopCulling() {
+		ShipCuller c = culler;
+		culler = null;
+		return c;
+	}
+
+	/**
+	 * Checks whether escaping ships are being removed
+	 * @return boolean
+	 */
+	public boolean isCulling() {
+		return culler != null;
+	}
+
+	/**
+	 * Replaces the root with its centered subnode for as long as the live cells stay away from the border, undoing expansions that are no longer needed
+	 */
+	private void shrink() {
+		while (root.level > 4) {
+			int[] bounds = getBounds();
+			int inner = 1 << (root.level - 3); // Half the side length of the centered subnode's own centered subnode, which update() expands past
+			if (bounds != null && (bounds[0] < -inner || bounds[1] < -inner || bounds[2] >= inner || bounds[3] >= inner))
+				return;
+			root = root.centeredSubNode();
+		}
+	}
 	
 	/**
-	 * Evolves the grid
+	 * Evolves the grid. The generation is evolved while holding the lock, so that a grid loaded, revealed or given a new rule on another thread isn't overwritten by
+	 * the next generation of the old one.
 	 */
 	public void update() {
+		materialize();
+		synchronized (this) {
+			if (mapped == null) // Unless a file was opened since, in which case it's revealed first next time
+				evolve();
+		}
+	}
+
+	/**
+	 * Evolves the grid by a generation
+	 */
+	private void evolve() {
 		root = root.expand().evolve();
-		if (root.nw.population - root.nw.se.population > 0 || // If live cells are approaching the border, expand
-			root.ne.population - root.ne.sw.population > 0 || 
-			root.sw.population - root.sw.ne.population > 0 || 
-			root.se.population - root.se.nw.population > 0)
+		int[] bounds = getBounds();
+		int inner = 1 << (root.level - 2); // Half the side length of the root's centered subnode
+		if (bounds != null && (bounds[0] < -inner || bounds[1] < -inner || bounds[2] >= inner || bounds[3] >= inner)) // If live cells are approaching the border, expand
 			root = root.expand();
+
+		generation++;
+		ShipCuller c = culler;
+		if (c != null && generation % cullInterval == 0) {
+			root = c.cull(root);
+			shrink();
+		}
+		if (log != null && generation % logInterval == 0) {
+			try {
+				log.checkpoint(root, generation);
+			} catch (IOException e) {
+				e.printStackTrace();
+				stopRecording();
+			}
+		}
 	}
 	
 	/**
-	 * Given a coordinate, reassigns min and max coords as necessary
-	 * @param x
-	 * @param y
+	 * Gets the bounding box of the live cells in the grid
+	 * @return {minX, minY, maxX, maxY}, or null if there are no live cells
+	 */
+	public int[] getBounds() {
+		materialize();
+		return bounds(root);
+	}
+
+	/**
+	 * Gets the bounding box of the live cells in a root
+	 * @param root a QuadNode centered on the origin
+	 * @return {minX, minY, maxX, maxY}, or null if there are no live cells
 	 */
-	public void setMinMaxCoords(int x, int y) {
-		minX = x < minX ? x : minX;
-		maxX = x > maxX ? x : maxX;
-		minY = y < minY ? y : minY;
-		maxY = y > maxY ? y : maxY;
+	static int[] bounds(QuadNode root) {
+		int[] bounds = root.bounds();
+		if (bounds.length == 0)
+			return null;
+		int corner = -(1 << (root.level - 1)); // Coordinate of the root's SW corner
+		return new int[] {corner + bounds[0], corner + bounds[1], corner + bounds[2], corner + bounds[3]};
 	}
 	
 	/**
@@ -0,0 +1,273 @@
+/**
+ * NodeStore is an optional home for canonical QuadNodes that lives in a memory-mapped file, so that several processes evolving the same patterns can share their work.
+ * Nodes put in the store by one process, along with the results of evolving small nodes, can be read back by every other process attached to the same file.
+ *
+ * The file holds a header, a hash index of node ids, and an append-only region of node records. A record is written before its id is published in the index with a
+ * compare-and-set, so processes never need to lock each other out. Ids start at 1, and 0 means no node. Results are only shared under the rule the store was set up with,
+ * whose full code is kept in the header.
+ */
+
+package hashlife;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class NodeStore {
+	static final int RESULT_LEVEL = 4; // Results are shared for nodes of this level only. Smaller nodes are quicker to evolve again than to look up in the file
+	static final int DEFAULT_CAPACITY = 1 << 22; // Number of node records in a new store
+	private static final int REMEMBERED = 1 << 20; // Most ids this process keeps for its own nodes before it starts over, so the maps don't grow with every node it sees
+
+	private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN); // Atomic access to ints in the file
+	private static final int READY = 0x4E4F4445; // Marks a store that has been set up
+	private static final int HEADER = 512, RECORD = 24; // Sizes in bytes of the header and of each node record (level, four children or a state, and result)
+	private static final int STATUS = 0, SLOTS = 4, CAPACITY = 8, NEXT = 12, RULE = 16; // Offsets of the header fields. The rule is its length followed by its code
+
+	private final MappedByteBuffer buffer;
+	private final int slots, capacity; // Number of index slots (a power of 2) and of node records
+	private final String rule; // Code of the rule that results are shared under
+	private volatile Transitions matched; // The last rule found to be the store's rule
+	private final ConcurrentHashMap<QuadNode, Integer> ids = new ConcurrentHashMap<QuadNode, Integer>(); // Ids of this process's nodes that are in the store
+	private final ConcurrentHashMap<Integer, QuadNode> nodes = new ConcurrentHashMap<Integer, QuadNode>(); // Nodes of this process, by id
+
+	/**
+	 * Constructor, attaches to a mapped store that has been set up
+	 * @param buffer
+	 * @param slots
+	 * @param capacity
+	 * @param rule
+	 */
+	private NodeStore(MappedByteBuffer buffer, int slots, int capacity, String rule) {
+		this.buffer = buffer;
+		this.slots = slots;
+		this.capacity = capacity;
+		this.rule = rule;
+	}
+
+	/**
+	 * Opens the store at a path, creating it if it doesn't exist. If another process has already created the store, its capacity and rule are used instead.
+	 * @param path
+	 * @param capacity the number of nodes the store can hold
+	 * @param rule the code of the rule to share results under
+	 * @return NodeStore
+	 * @throws IOException if the file can't be mapped or isn't a node store
+	 */
+	public static NodeStore open(String path, int capacity, String rule) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+			int slots = Integer.highestOneBit(Math.max(capacity, 1024)) * 2; // Keeps the index at most half full
+
+			if (INT.compareAndSet(header, STATUS, 0, 1)) { // This process is the first, so it sets up the store
+				byte[] code = rule.getBytes(StandardCharsets.US_ASCII);
+				if (size(slots, capacity) > Integer.MAX_VALUE)
+					throw new IOException("A node store can't hold " + capacity + " nodes");
+				if (RULE + 4 + code.length > HEADER)
+					throw new IOException("The rule " + rule + " is too long for a node store");
+				header.putInt(SLOTS, slots);
+				header.putInt(CAPACITY, capacity);
+				header.putInt(NEXT, 1);
+				header.putInt(RULE, code.length);
+				header.put(RULE + 4, code);
+				channel.map(FileChannel.MapMode.READ_WRITE, 0, size(slots, capacity)); // Grows the file to its full size
+				INT.setVolatile(header, STATUS, READY);
+			} else {
+				long deadline = System.currentTimeMillis() + 5000;
+				while ((int) INT.getVolatile(header, STATUS) == 1 && System.currentTimeMillis() < deadline) // Waits for the first process to finish setting up
+					Thread.onSpinWait();
+				if ((int) INT.getVolatile(header, STATUS) != READY)
+					throw new IOException(path + " isn't a node store");
+				slots = header.getInt(SLOTS);
+				capacity = header.getInt(CAPACITY);
+				int length = header.getInt(RULE);
+				if (length < 0 || RULE + 4 + length > HEADER)
+					throw new IOException(path + " isn't a node store");
+				byte[] code = new byte[length];
+				header.get(RULE + 4, code);
+				rule = new String(code, StandardCharsets.US_ASCII);
+			}
+			return new NodeStore(channel.map(FileChannel.MapMode.READ_WRITE, 0, size(slots, capacity)), slots, capacity, rule);
+		}
+	}
+
+	/**
+	 * Calculates the size of a store's file
+	 * @param slots
+	 * @param capacity
+	 * @return size in bytes
+	 */
+	private static long size(int slots, int capacity) {
+		return HEADER + 4L * slots + (long) RECORD * capacity;
+	}
+
+
+	/// NODES ///
+
+	/**
+	 * Gets the id of a node, putting it and its descendants in the store if they aren't there yet
+	 * @param q
+	 * @return the id, or 0 if the store is full
+	 */
+	public int put(QuadNode q) {
+		Integer known = ids.get(q);
+		if (known != null)
+			return known;
+
+		int id;
+		if (q.level == 0)
+			id = add(0, q.state, 0, 0, 0);
+		else {
+			int nw = put(q.nw), ne = put(q.ne), sw = put(q.sw), se = put(q.se);
+			id = nw == 0 || ne == 0 || sw == 0 || se == 0 ? 0 : add(q.level, nw, ne, sw, se);
+		}
+		if (id != 0) {
+			remember();
+			ids.put(q, id);
+			nodes.putIfAbsent(id, q);
+		}
+		return id;
+	}
+
+	/**
+	 * Gets the node with an id, building it and its descendants as canonical QuadNodes if this process hasn't seen them yet
+	 * @param id
+	 * @return the node, or null if id is 0
+	 */
+	public QuadNode get(int id) {
+		if (id == 0)
+			return null;
+		QuadNode q = nodes.get(id);
+		if (q != null)
+			return q;
+
+		int at = record(id);
+		if (buffer.getInt(at) == 0)
+			q = QuadNode.newNode(buffer.getInt(at + 4));
+		else
+			q = QuadNode.newNode(get(buffer.getInt(at + 4)), get(buffer.getInt(at + 8)), get(buffer.getInt(at + 12)), get(buffer.getInt(at + 16)));
+		remember();
+		nodes.put(id, q);
+		ids.putIfAbsent(q, id);
+		return q;
+	}
+
+	/**
+	 * Forgets the ids of this process's nodes once there are too many of them. They are looked up again in the store when they're needed.
+	 */
+	private void remember() {
+		if (ids.size() >= REMEMBERED || nodes.size() >= REMEMBERED) {
+			ids.clear();
+			nodes.clear();
+		}
+	}
+
+	/**
+	 * Finds the record of a node in the index, or adds one
+	 * @param level
+	 * @param a the state of a cell, or the id of the NW child
+	 * @param b the id of the NE child
+	 * @param c the id of the SW child
+	 * @param d the id of the SE child
+	 * @return the id of the record, or 0 if the store is full
+	 */
+	private int add(int level, int a, int b, int c, int d) {
+		int slot = hash(level, a, b, c, d) & (slots - 1);
+		int fresh = 0; // The record this call has written, if any
+		while (true) {
+			int at = HEADER + 4 * slot;
+			int id = (int) INT.getVolatile(buffer, at);
+			if (id == 0) {
+				if (fresh == 0) {
+					if ((int) INT.getVolatile(buffer, NEXT) > capacity || (fresh = (int) INT.getAndAdd(buffer, NEXT, 1)) > capacity)
+						return 0;
+					int r = record(fresh);
+					buffer.putInt(r, level);
+					buffer.putInt(r + 4, a);
+					buffer.putInt(r + 8, b);
+					buffer.putInt(r + 12, c);
+					buffer.putInt(r + 16, d);
+					buffer.putInt(r + 20, 0);
+				}
+				if (INT.compareAndSet(buffer, at, 0, fresh)) // Publishes the record, which is complete by now
+					return fresh;
+				continue; // Another process took the slot first, so check whether it added the same node
+			}
+			int r = record(id);
+			if (buffer.getInt(r) == level && buffer.getInt(r + 4) == a && buffer.getInt(r + 8) == b && buffer.getInt(r + 12) == c && buffer.getInt(r + 16) == d)
+				return id; // If this call wrote a record too, it is left unused
+			slot = (slot + 1) & (slots - 1);
+		}
+	}
+
+	/**
+	 * Gets the offset of a record
+	 * @param id
+	 * @return offset in bytes
+	 */
+	private int record(int id) {
+		return HEADER + 4 * slots + RECORD * (id - 1);
+	}
+
+	/**
+	 * Hashes the contents of a record
+	 * @return hash
+	 */
+	private static int hash(int level, int a, int b, int c, int d) {
+		int h = level;
+		h = h * 0x9E3779B1 + a;
+		h = h * 0x9E3779B1 + b;
+		h = h * 0x9E3779B1 + c;
+		h = h * 0x9E3779B1 + d;
+		h ^= h >>> 15;
+		h *= 0x85EBCA6B;
+		return h ^ h >>> 13;
+	}
+
+
+	/// RESULTS ///
+
+	/**
+	 * Gets the result of evolving a node, if any process has stored it under the current rule
+	 * @param q
+	 * @return the result, or null
+	 */
+	public QuadNode getResult(QuadNode q) {
+		if (!usesCurrentRule())
+			return null;
+		int id = put(q);
+		return id == 0 ? null : get((int) INT.getVolatile(buffer, record(id) + 20));
+	}
+
+	/**
+	 * Shares the result of evolving a node under the current rule
+	 * @param q
+	 * @param result
+	 */
+	public void putResult(QuadNode q, QuadNode result) {
+		if (!usesCurrentRule())
+			return;
+		int id = put(q), r = put(result);
+		if (id != 0 && r != 0)
+			INT.setVolatile(buffer, record(id) + 20, r);
+	}
+
+	/**
+	 * Checks whether results in the store are for the current rule
+	 * @return the store's rule is the current rule
+	 */
+	private boolean usesCurrentRule() {
+		Transitions t = NodeManager.t;
+		if (t == matched) // Saves comparing the codes while the rule stays the same
+			return true;
+		if (!t.getCode().equals(rule))
+			return false;
+		matched = t;
+		return true;
+	}
+}
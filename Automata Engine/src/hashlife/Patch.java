@@ -0,0 +1,313 @@
+/**
+ * A Patch is a canonical QuadNode along with where its SW corner sits, which lets a pattern be compiled into a QuadNode once and then placed anywhere on the grid.
+ * Since QuadNodes can only be combined with QuadNodes that line up with them, placing a Patch at an arbitrary position builds shifted copies of it out of windows over
+ * its subnodes. Windows are memoized, so the cost depends on the number of distinct QuadNodes in the Patch rather than on its number of cells.
+ */
+
+package hashlife;
+
+import java.util.HashMap;
+
+public class Patch {
+	final QuadNode node;
+	final int x, y; // Coordinates of the node's SW corner
+	final int left, bottom, width, height; // The region the Patch covers. Cells of the node outside it aren't part of the Patch
+
+	/**
+	 * Constructor
+	 * @param node
+	 * @param x
+	 * @param y
+	 * @param left
+	 * @param bottom
+	 * @param width
+	 * @param height
+	 */
+	public Patch(QuadNode node, int x, int y, int left, int bottom, int width, int height) {
+		this.node = node;
+		this.x = x;
+		this.y = y;
+		this.left = left;
+		this.bottom = bottom;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Compiles a batch of live cells into a Patch covering their bounding box
+	 * @param cells coordinates of the cells, as x0, y0, x1, y1, ...
+	 * @param count the number of cells
+	 * @return Patch, or null if there are no cells
+	 */
+	public static Patch fromCells(int[] cells, int count) {
+		if (count == 0)
+			return null;
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < 2 * count; i += 2) {
+			minX = Math.min(minX, cells[i]);
+			maxX = Math.max(maxX, cells[i]);
+			minY = Math.min(minY, cells[i + 1]);
+			maxY = Math.max(maxY, cells[i + 1]);
+		}
+		int width = maxX - minX + 1, height = maxY - minY + 1;
+		int level = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(width, height) - 1)); // Smallest level that fits the cells
+		int half = 1 << (level - 1);
+
+		int[] shifted = new int[2 * count]; // Coordinates relative to the center of the node
+		for (int i = 0; i < 2 * count; i += 2) {
+			shifted[i] = cells[i] - minX - half;
+			shifted[i + 1] = cells[i + 1] - minY - half;
+		}
+		return new Patch(QuadNode.build(shifted, count, level), minX, minY, minX, minY, width, height);
+	}
+
+	/**
+	 * Takes a rectangle of a root as a Patch. The Patch keeps the smallest QuadNode of the root that holds the rectangle, so no QuadNodes are built and even huge
+	 * rectangles cost next to no memory.
+	 * @param root a QuadNode centered on the origin
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @return Patch
+	 */
+	public static Patch copy(QuadNode root, int x0, int y0, int x1, int y1) {
+		QuadNode q = root;
+		int x = -(1 << (root.level - 1)), y = x; // SW corner of q
+		while (q.level > 0) { // Descends while the rectangle fits in one child
+			int half = 1 << (q.level - 1);
+			boolean east = x0 >= x + half, north = y0 >= y + half;
+			if ((x1 >= x + half) != east || (y1 >= y + half) != north)
+				break;
+			q = north ? (east ? q.ne : q.nw) : (east ? q.se : q.sw);
+			x += east ? half : 0;
+			y += north ? half : 0;
+		}
+		return new Patch(q, x, y, x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+	}
+
+	/**
+	 * Combines the Patch with a shifted copy of another Patch
+	 * @param other
+	 * @param dx how far east other is shifted
+	 * @param dy how far north other is shifted
+	 * @return a Patch covering both regions, whose cells are alive if they are alive in either Patch
+	 */
+	public Patch union(Patch other, int dx, int dy) {
+		int l = Math.min(left, other.left + dx), b = Math.min(bottom, other.bottom + dy);
+		int w = Math.max(left + width, other.left + dx + other.width) - l, h = Math.max(bottom + height, other.bottom + dy + other.height) - b;
+		int level = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(w, h) - 1)), half = 1 << (level - 1);
+		QuadNode q = QuadNode.merge(place(level, -half - l, -half - b), other.place(level, -half - l + dx, -half - b + dy), QuadNode.mergeModes.OR);
+		return new Patch(q, l, b, l, b, w, h);
+	}
+
+	/**
+	 * Repeats the Patch every dx cells east and every dy cells north, starting from its region's SW corner. The copies are combined by recursive doubling, so a row of
+	 * n copies takes log n unions, and since every copy has the same contents the doubled rows are made of the same few QuadNodes.
+	 * @param dx period to the east, at least 1
+	 * @param dy period to the north, at least 1
+	 * @param width width of the tiled region
+	 * @param height height of the tiled region
+	 * @return a Patch covering the tiled region
+	 */
+	public Patch tile(int dx, int dy, int width, int height) {
+		Patch p = this;
+		for (long n = 1; n * dx < width; n *= 2) // Doubles the row until it's wide enough
+			p = p.union(p, (int) (n * dx), 0);
+		for (long n = 1; n * dy < height; n *= 2) // Then doubles the rows until they're tall enough
+			p = p.union(p, 0, (int) (n * dy));
+		return new Patch(p.node, p.x, p.y, left, bottom, width, height);
+	}
+
+	/**
+	 * Transforms the Patch, keeping its region's SW corner in place
+	 * @param t a combination of QuadNode.FLIP_X, FLIP_Y and TRANSPOSE
+	 * @return the transformed Patch
+	 */
+	public Patch transform(int t) {
+		if (t == 0)
+			return this;
+		Patch p = compact();
+		int side = 1 << p.node.level;
+		int x0 = p.left - p.x, y0 = p.bottom - p.y, x1 = x0 + width - 1, y1 = y0 + height - 1; // The region within the node
+		if ((t & QuadNode.FLIP_X) != 0) {
+			int w = side - 1 - x1;
+			x1 = side - 1 - x0;
+			x0 = w;
+		}
+		if ((t & QuadNode.FLIP_Y) != 0) {
+			int s = side - 1 - y1;
+			y1 = side - 1 - y0;
+			y0 = s;
+		}
+		if ((t & QuadNode.TRANSPOSE) != 0) {
+			int x = x0;
+			x0 = y0;
+			y0 = x;
+			x = x1;
+			x1 = y1;
+			y1 = x;
+		}
+		int dx = left - (p.x + x0), dy = bottom - (p.y + y0); // Moves the transformed region back to the original SW corner
+		return new Patch(p.node.transform(t), p.x + dx, p.y + dy, left, bottom, x1 - x0 + 1, y1 - y0 + 1);
+	}
+
+	/**
+	 * Transforms the coordinates of a cell in a width x height region the same way transform moves the cells of a Patch
+	 * @param u column of the cell, counting from the west edge of the region
+	 * @param v row of the cell, counting from the south edge of the region
+	 * @param width
+	 * @param height
+	 * @param t
+	 * @return {u, v} after transforming
+	 */
+	static int[] transform(int u, int v, int width, int height, int t) {
+		if ((t & QuadNode.FLIP_X) != 0)
+			u = width - 1 - u;
+		if ((t & QuadNode.FLIP_Y) != 0)
+			v = height - 1 - v;
+		return (t & QuadNode.TRANSPOSE) != 0 ? new int[] {v, u} : new int[] {u, v};
+	}
+
+	/**
+	 * Rebuilds the Patch on the smallest QuadNode that holds its region, so that operations on the node don't spend time outside the region
+	 * @return Patch
+	 */
+	Patch compact() {
+		int level = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(width, height) - 1));
+		if (node.level <= level)
+			return this;
+		int half = 1 << (level - 1);
+		return new Patch(place(level, -half - left, -half - bottom), left, bottom, left, bottom, width, height);
+	}
+
+	/**
+	 * Builds a QuadNode centered on the origin, like the root, that holds the Patch moved by (dx, dy) and is dead everywhere else
+	 * @param level the level of the QuadNode, which must be big enough to hold the moved Patch
+	 * @param dx
+	 * @param dy
+	 * @return QuadNode
+	 */
+	public QuadNode place(int level, int dx, int dy) {
+		long corner = -(1L << (level - 1)); // Coordinate of the SW corner of the QuadNode being built
+		QuadNode q = place(level, corner - x - dx, corner - y - dy, new HashMap<Window, QuadNode>());
+		int[] bounds = node.bounds();
+		if (bounds.length == 0 || bounds[0] >= left - x && bounds[1] >= bottom - y && bounds[2] < left - x + width && bounds[3] < bottom - y + height)
+			return q; // All of the node's live cells are in the region
+
+		int half = 1 << (level - 1), w = left + dx, s = bottom + dy, e = w + width - 1, n = s + height - 1; // Clears the cells outside the region
+		if (w > -half)
+			q = q.fillRect(-half, -half, w - 1, half - 1, false);
+		if (e < half - 1)
+			q = q.fillRect(e + 1, -half, half - 1, half - 1, false);
+		if (s > -half)
+			q = q.fillRect(-half, -half, half - 1, s - 1, false);
+		if (n < half - 1)
+			q = q.fillRect(-half, n + 1, half - 1, half - 1, false);
+		return q;
+	}
+
+	/**
+	 * Builds the QuadNode whose SW corner is at (wx, wy), measured from the SW corner of the Patch's node
+	 * @param level
+	 * @param wx
+	 * @param wy
+	 * @param memo
+	 * @return QuadNode
+	 */
+	private QuadNode place(int level, long wx, long wy, HashMap<Window, QuadNode> memo) {
+		long side = 1L << level, patchSide = 1L << node.level;
+		if (wx >= patchSide || wy >= patchSide || wx + side <= 0 || wy + side <= 0) // Doesn't overlap the Patch
+			return QuadNode.newEmpty(level);
+		if (level > node.level) {
+			long half = side / 2;
+			return QuadNode.newNode(place(level - 1, wx, wy + half, memo), place(level - 1, wx + half, wy + half, memo),
+									place(level - 1, wx, wy, memo), place(level - 1, wx + half, wy, memo));
+		}
+		long i = Math.floorDiv(wx, side), j = Math.floorDiv(wy, side); // The Patch's subnodes of this level that the QuadNode overlaps
+		return window(subnode(level, i, j + 1), subnode(level, i + 1, j + 1), subnode(level, i, j), subnode(level, i + 1, j),
+					  (int) (wx - i * side), (int) (wy - j * side), memo);
+	}
+
+	/**
+	 * Gets one of the Patch's subnodes
+	 * @param level the level of the subnode
+	 * @param i column of the subnode, counting from the west
+	 * @param j row of the subnode, counting from the south
+	 * @return the subnode, or an empty QuadNode if (i, j) is outside the Patch's node
+	 */
+	private QuadNode subnode(int level, long i, long j) {
+		long count = 1L << (node.level - level); // Number of subnodes across the Patch's node
+		if (i < 0 || j < 0 || i >= count || j >= count)
+			return QuadNode.newEmpty(level);
+		QuadNode q = node;
+		for (int bit = node.level - level - 1; bit >= 0; bit--) {
+			boolean east = (i >>> bit & 1) == 1, north = (j >>> bit & 1) == 1;
+			q = north ? (east ? q.ne : q.nw) : (east ? q.se : q.sw);
+		}
+		return q;
+	}
+
+	/**
+	 * Gets the QuadNode, the same size as nw, ne, sw and se, whose SW corner is at (ox, oy) within the square they form. Each of its children is in turn a window over
+	 * four of their grandchildren, with the same offset at every call of a level, so the number of windows built is about the number of distinct QuadNodes involved.
+	 * @param nw
+	 * @param ne
+	 * @param sw
+	 * @param se
+	 * @param ox between 0 and the side length of sw
+	 * @param oy between 0 and the side length of sw
+	 * @param memo windows already built by this placement
+	 * @return QuadNode
+	 */
+	static QuadNode window(QuadNode nw, QuadNode ne, QuadNode sw, QuadNode se, int ox, int oy, HashMap<Window, QuadNode> memo) {
+		if (ox == 0 && oy == 0)
+			return sw;
+		if (nw.state == 0 && ne.state == 0 && sw.state == 0 && se.state == 0)
+			return sw; // Also empty
+		Window key = new Window(nw, ne, sw, se, ox, oy);
+		QuadNode q = memo.get(key);
+		if (q != null)
+			return q;
+
+		QuadNode[][] g = { // Grandchildren, by column from the west and row from the south
+				{sw.sw, sw.nw, nw.sw, nw.nw},
+				{sw.se, sw.ne, nw.se, nw.ne},
+				{se.sw, se.nw, ne.sw, ne.nw},
+				{se.se, se.ne, ne.se, ne.ne}};
+		int half = 1 << (sw.level - 1);
+		int c = ox / half, r = oy / half, rx = ox % half, ry = oy % half;
+		q = QuadNode.newNode(window(g[c][r + 2], g[c + 1][r + 2], g[c][r + 1], g[c + 1][r + 1], rx, ry, memo),
+							 window(g[c + 1][r + 2], g[c + 2][r + 2], g[c + 1][r + 1], g[c + 2][r + 1], rx, ry, memo),
+							 window(g[c][r + 1], g[c + 1][r + 1], g[c][r], g[c + 1][r], rx, ry, memo),
+							 window(g[c + 1][r + 1], g[c + 2][r + 1], g[c + 1][r], g[c + 2][r], rx, ry, memo));
+		memo.put(key, q);
+		return q;
+	}
+
+	/**
+	 * Key for memoizing windows, comparing QuadNodes by identity since they are canonical
+	 */
+	static class Window {
+		private final QuadNode nw, ne, sw, se;
+		private final int ox, oy;
+
+		Window(QuadNode nw, QuadNode ne, QuadNode sw, QuadNode se, int ox, int oy) {
+			this.nw = nw;
+			this.ne = ne;
+			this.sw = sw;
+			this.se = se;
+			this.ox = ox;
+			this.oy = oy;
+		}
+
+		public int hashCode() {
+			return System.identityHashCode(nw) + 11 * System.identityHashCode(ne) + 101 * System.identityHashCode(sw) + 1007 * System.identityHashCode(se) + 31 * ox + oy;
+		}
+
+		public boolean equals(Object o) {
+			Window w = (Window) o;
+			return nw == w.nw && ne == w.ne && sw == w.sw && se == w.se && ox == w.ox && oy == w.oy;
+		}
+	}
+}
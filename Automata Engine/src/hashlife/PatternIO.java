@@ -0,0 +1,506 @@
+/**
+ * PatternIO streams grids to and from cell list files: the .grid format of one "x y" line per live cell, RLE (.rle), and plaintext (.cells). Files are parsed a byte at
+ * a time out of a buffer filled from a FileChannel, without making a String for each cell, and the cells are built into a new root in large batches, which is only
+ * handed over once the whole file has been read. Writers go through a root a band of rows at a time, so that neither side holds more than a batch of cells at once.
+ *
+ * RLE and plaintext patterns are read with their NW corner at the origin. Only live cells are read from multistate RLE files.
+ */
+
+package hashlife;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class PatternIO {
+	private static final int BATCH = 1 << 20; // Number of cells parsed before they're built into the grid, and the most cells a writer sorts at once
+	private static final int LINE = 70; // Longest line written in RLE files
+	private static final Pattern RLE_HEADER = Pattern.compile("x\\s*=\\s*(\\d+)\\s*,\\s*y\\s*=\\s*(\\d+)(\\s*,\\s*rule\\s*=\\s*(\\S+))?");
+
+	/// READING ///
+
+	/**
+	 * Reads a file a buffer at a time, one byte after another
+	 */
+	static class ByteReader implements Closeable {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+		private final Progress progress; // Counts the bytes read, if it isn't null
+		private final String path;
+		private int pushed = -2; // A byte given back with unread, or -2 if there isn't one
+		private long offset; // Number of bytes returned by next() and not given back
+
+		ByteReader(String path) throws IOException {
+			this(path, null);
+		}
+
+		ByteReader(String path, Progress progress) throws IOException {
+			channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+			buffer.limit(0);
+			this.path = path;
+			this.progress = progress;
+			if (progress != null)
+				progress.start(channel.size());
+		}
+
+		/**
+		 * Reads the next byte
+		 * @return the byte, or -1 at the end of the file
+		 * @throws IOException
+		 */
+		int next() throws IOException {
+			if (pushed != -2) {
+				int c = pushed;
+				pushed = -2;
+				if (c != -1)
+					offset++;
+				return c;
+			}
+			if (!buffer.hasRemaining()) {
+				buffer.clear();
+				int read;
+				do
+					read = channel.read(buffer);
+				while (read == 0);
+				buffer.flip();
+				if (read < 0)
+					return -1;
+				if (progress != null)
+					progress.advance(read);
+			}
+			offset++;
+			return buffer.get() & 0xFF;
+		}
+
+		/**
+		 * Gives a byte back, so that the next call to next() returns it again
+		 * @param c
+		 */
+		void unread(int c) {
+			pushed = c;
+			if (c != -1)
+				offset--;
+		}
+
+		/**
+		 * Makes sure that nothing but whitespace is left in the file, once a reader has stopped finding what it expects
+		 * @throws IOException naming where the file stops making sense, if it isn't at the end
+		 */
+		void end() throws IOException {
+			int c = next();
+			while (c == ' ' || c == '\t' || c == '\r' || c == '\n')
+				c = next();
+			if (c != -1) {
+				offset--;
+				throw malformed();
+			}
+		}
+
+		/**
+		 * Describes where the file stops making sense
+		 * @return IOException naming the offset of the next byte
+		 */
+		IOException malformed() {
+			return new IOException(path + " is malformed at byte " + offset);
+		}
+
+		/**
+		 * Reads an integer, skipping any whitespace before it
+		 * @return the integer, or Long.MIN_VALUE if the file ends or the next characters aren't a number
+		 * @throws IOException
+		 */
+		long number() throws IOException {
+			int c = next();
+			while (c == ' ' || c == '\t' || c == '\r' || c == '\n')
+				c = next();
+			boolean negative = c == '-';
+			if (negative)
+				c = next();
+			if (c < '0' || c > '9') {
+				unread(c);
+				return Long.MIN_VALUE;
+			}
+			long n = 0;
+			for (; c >= '0' && c <= '9'; c = next())
+				n = n * 10 + (c - '0');
+			unread(c);
+			return negative ? -n : n;
+		}
+
+		/**
+		 * Reads up to a delimiter, which is skipped
+		 * @param delimiter
+		 * @return the text before the delimiter
+		 * @throws IOException
+		 */
+		String until(int delimiter) throws IOException {
+			ByteArrayOutputStream text = new ByteArrayOutputStream();
+			for (int c = next(); c != delimiter && c != -1; c = next())
+				text.write(c);
+			return new String(text.toByteArray(), StandardCharsets.UTF_8);
+		}
+
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Collects cells and builds them into a root a batch at a time
+	 */
+	private static class Batch {
+		private final int[] cells = new int[2 * BATCH];
+		private int count;
+		QuadNode root = QuadNode.newEmpty(7).expand();
+
+		void add(int x, int y) {
+			cells[2 * count] = x;
+			cells[2 * count + 1] = y;
+			if (++count == BATCH)
+				flush();
+		}
+
+		void flush() {
+			root = NodeManager.addCells(root, cells, count);
+			count = 0;
+		}
+	}
+
+	/**
+	 * Reads the cells of a .grid, .rle or .cells file
+	 * @param path
+	 * @param progress counts the bytes read, and may be null
+	 * @return the grid as a Frame at generation 0, whose rule is null if the file doesn't give one that's valid
+	 * @throws IOException
+	 */
+	public static NodeLog.Frame read(String path, Progress progress) throws IOException {
+		Batch batch = new Batch();
+		String rule = null;
+		try (ByteReader in = new ByteReader(path, progress)) {
+			if (path.endsWith(".rle"))
+				rule = readRLE(in, batch);
+			else if (path.endsWith(".cells"))
+				readPlaintext(in, batch);
+			else
+				readGrid(in, batch);
+		}
+		batch.flush();
+		return new NodeLog.Frame(0, batch.root, rule);
+	}
+
+	/**
+	 * Reads "x y" lines
+	 * @param in
+	 * @param batch
+	 * @throws IOException
+	 */
+	private static void readGrid(ByteReader in, Batch batch) throws IOException {
+		while (true) {
+			long x = in.number();
+			if (x == Long.MIN_VALUE) {
+				in.end();
+				return;
+			}
+			long y = in.number();
+			if (y == Long.MIN_VALUE) // A line with only one coordinate
+				throw in.malformed();
+			batch.add((int) x, (int) y);
+		}
+	}
+
+	/**
+	 * Reads an RLE pattern: comment lines starting with '#', a header giving the size and rule, then runs of cells ending with '!'
+	 * @param in
+	 * @param batch
+	 * @return the rule in the header, or null if it doesn't give a valid one
+	 * @throws IOException
+	 */
+	private static String readRLE(ByteReader in, Batch batch) throws IOException {
+		String rule = null;
+		int c = in.next();
+		while (c == '#' || c == 'x' || c == '\r' || c == '\n' || c == ' ') { // Comments and the header
+			if (c == 'x') {
+				Matcher m = RLE_HEADER.matcher("x" + in.until('\n'));
+				if (m.lookingAt() && m.group(4) != null)
+					rule = Transitions.fromNotation(m.group(4));
+				c = in.next();
+				break;
+			}
+			if (c == '#')
+				in.until('\n');
+			c = in.next();
+		}
+
+		int row = 0, col = 0, run = 0;
+		for (; c != -1 && c != '!'; c = in.next()) {
+			if (c >= '0' && c <= '9') {
+				run = run * 10 + (c - '0');
+				continue;
+			}
+			int n = Math.max(run, 1);
+			if (c == 'o' || c == 'A') {
+				for (int i = 0; i < n; i++)
+					batch.add(col + i, -row);
+				col += n;
+			} else if (c == 'b' || c == '.' || c >= 'B' && c <= 'X')
+				col += n;
+			else if (c >= 'p' && c <= 'y') { // The first half of a state above 24, which is dying
+				in.next();
+				col += n;
+			} else if (c == '$') {
+				row += n;
+				col = 0;
+			} else
+				continue; // Whitespace doesn't end a run
+			run = 0;
+		}
+		return rule;
+	}
+
+	/**
+	 * Reads a plaintext pattern: comment lines starting with '!', then rows of '.' for dead cells and 'O' for live ones
+	 * @param in
+	 * @param batch
+	 * @throws IOException
+	 */
+	private static void readPlaintext(ByteReader in, Batch batch) throws IOException {
+		int row = 0, col = 0;
+		boolean start = true; // Whether the next byte starts a line
+		for (int c = in.next(); c != -1; c = in.next()) {
+			if (start && c == '!') {
+				in.until('\n');
+				continue;
+			}
+			start = c == '\n';
+			if (c == '\n') {
+				row++;
+				col = 0;
+			} else if (c == 'O' || c == '*')
+				batch.add(col++, -row);
+			else if (c == '.')
+				col++;
+		}
+	}
+
+	/// WRITING ///
+
+	/**
+	 * Receives the live cells of a grid row by row from the north, and from west to east within each row
+	 */
+	private static abstract class RowWriter {
+		final OutputStream out;
+		private final byte[] digits = new byte[20];
+
+		RowWriter(OutputStream out) {
+			this.out = out;
+		}
+
+		abstract void cell(long row, long col) throws IOException;
+
+		abstract void finish() throws IOException;
+
+		/**
+		 * Writes a number
+		 * @param n
+		 * @return the number of characters written
+		 * @throws IOException
+		 */
+		int write(long n) throws IOException {
+			return number(out, n, digits);
+		}
+	}
+
+	/**
+	 * Writes a number without making a String
+	 * @param out
+	 * @param n
+	 * @param digits room for the digits of any long
+	 * @return the number of characters written
+	 * @throws IOException
+	 */
+	private static int number(OutputStream out, long n, byte[] digits) throws IOException {
+		int length = 0;
+		if (n < 0) {
+			out.write('-');
+			n = -n;
+			length++;
+		}
+		int i = digits.length;
+		do {
+			digits[--i] = (byte) ('0' + n % 10);
+			n /= 10;
+		} while (n > 0);
+		out.write(digits, i, digits.length - i);
+		return length + digits.length - i;
+	}
+
+	/**
+	 * Writes the cells of a grid to a .grid, .rle or .cells file
+	 * @param path
+	 * @param root a QuadNode centered on the origin
+	 * @param rule
+	 * @param progress counts the live cells written, and may be null
+	 * @throws IOException
+	 */
+	public static void write(String path, QuadNode root, String rule, Progress progress) throws IOException {
+		if (progress != null)
+			progress.start(root.population);
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16)) {
+			int[] bounds = NodeManager.bounds(root);
+			if (path.endsWith(".rle"))
+				writeRLE(out, root, bounds, rule, progress);
+			else if (path.endsWith(".cells"))
+				writePlaintext(out, root, bounds, progress);
+			else {
+				byte[] digits = new byte[20];
+				CellIterator it = new CellIterator(root, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+				for (int n = 1; it.next(); n++) {
+					number(out, it.getX(), digits);
+					out.write(' ');
+					number(out, it.getY(), digits);
+					out.write('\n');
+					if (progress != null && (n & 0xFFF) == 0)
+						progress.advance(0x1000);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes an RLE pattern
+	 * @param out
+	 * @param root
+	 * @param bounds
+	 * @param rule
+	 * @param progress
+	 * @throws IOException
+	 */
+	private static void writeRLE(OutputStream out, QuadNode root, int[] bounds, String rule, Progress progress) throws IOException {
+		long width = bounds == null ? 0 : (long) bounds[2] - bounds[0] + 1, height = bounds == null ? 0 : (long) bounds[3] - bounds[1] + 1;
+		out.write(("#C Written by CA Play\nx = " + width + ", y = " + height + ", rule = " + Transitions.toNotation(rule) + "\n").getBytes(StandardCharsets.US_ASCII));
+		RowWriter w = new RowWriter(out) {
+			private long row, col, start = -1, length; // The row and column the next run starts at, and the run of live cells being counted
+			private int line; // Characters on the current line
+
+			void cell(long r, long c) throws IOException {
+				if (r == row && c == start + length) {
+					length++;
+					return;
+				}
+				flush();
+				if (r > row) {
+					run(r - row, '$');
+					row = r;
+					col = 0;
+				}
+				if (c > col)
+					run(c - col, 'b');
+				start = c;
+				length = 1;
+			}
+
+			private void flush() throws IOException {
+				if (length > 0) {
+					run(length, 'o');
+					col = start + length;
+					length = 0;
+				}
+			}
+
+			private void run(long n, char tag) throws IOException {
+				int size = (n > 1 ? Long.toString(n).length() : 0) + 1; // Only used to decide where lines break
+				if (line + size > LINE) {
+					out.write('\n');
+					line = 0;
+				}
+				if (n > 1)
+					write(n);
+				out.write(tag);
+				line += size;
+			}
+
+			void finish() throws IOException {
+				flush();
+				out.write('!');
+				out.write('\n');
+			}
+		};
+		if (bounds != null)
+			band(root, bounds, bounds[3], bounds[1], w, progress);
+		w.finish();
+	}
+
+	/**
+	 * Writes a plaintext pattern
+	 * @param out
+	 * @param root
+	 * @param bounds
+	 * @param progress
+	 * @throws IOException
+	 */
+	private static void writePlaintext(OutputStream out, QuadNode root, int[] bounds, Progress progress) throws IOException {
+		out.write("!Name: Written by CA Play\n".getBytes(StandardCharsets.US_ASCII));
+		RowWriter w = new RowWriter(out) {
+			private long row, col;
+
+			void cell(long r, long c) throws IOException {
+				for (; row < r; row++, col = 0)
+					out.write('\n');
+				for (; col < c; col++)
+					out.write('.');
+				out.write('O');
+				col++;
+			}
+
+			void finish() throws IOException {
+				out.write('\n');
+			}
+		};
+		if (bounds != null)
+			band(root, bounds, bounds[3], bounds[1], w, progress);
+		w.finish();
+	}
+
+	/**
+	 * Passes the live cells between two rows to a RowWriter in order, splitting the rows into bands until each band holds at most a batch of cells
+	 * @param root
+	 * @param bounds the bounding box of the grid, whose NW corner is row 0 and column 0
+	 * @param top the northmost row of the band
+	 * @param bottom the southmost row of the band
+	 * @param w
+	 * @param progress may be null
+	 * @throws IOException
+	 */
+	private static void band(QuadNode root, int[] bounds, int top, int bottom, RowWriter w, Progress progress) throws IOException {
+		long count = root.countRect(bounds[0], bottom, bounds[2], top);
+		if (count == 0)
+			return;
+		if (count > BATCH && top > bottom) {
+			int middle = (int) (((long) top + bottom) >> 1);
+			band(root, bounds, top, middle + 1, w, progress);
+			band(root, bounds, middle, bottom, w, progress);
+			return;
+		}
+		long[] keys = new long[(int) count]; // Row in the high bits and column in the low bits, so that sorting puts them in order
+		int n = 0;
+		CellIterator it = new CellIterator(root, bounds[0], bottom, bounds[2], top);
+		while (it.next())
+			keys[n++] = ((long) bounds[3] - it.getY()) << 32 | ((long) it.getX() - bounds[0]);
+		Arrays.sort(keys);
+		for (long k: keys)
+			w.cell(k >>> 32, k & 0xFFFFFFFFL);
+		if (progress != null)
+			progress.advance(count);
+	}
+}
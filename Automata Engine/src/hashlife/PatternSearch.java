@@ -0,0 +1,247 @@
+/**
+ * PatternSearch finds every occurrence of one or more patterns in a QuadNode, in any of their eight orientations. The grid is split into aligned blocks at least as large as the
+ * pattern, so that every occurrence lies in the 2x2 square of blocks above and east of the block holding its SW corner. Each of those squares is a canonical QuadNode,
+ * so squares that repeat across the grid are only searched once, and squares with no live cells are never built at all.
+ *
+ * Within a square, the rows are packed into bits and each orientation is compared with a rolling hash over the rows at every column, so the pattern's cells are only
+ * compared one by one where the hashes agree.
+ */
+
+package hashlife;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class PatternSearch {
+	private static final long BASE = 0x9E3779B97F4A7C15L; // Multiplier of the rolling hash
+	private static final int MEMO_LIMIT = 1 << 16; // Number of squares remembered before the memo is cleared, for searches that are reused
+
+	private final ArrayList<Shape> shapes = new ArrayList<Shape>(); // The distinct orientations of the patterns
+	private final int pad; // Width of the dead border around the pattern, 1 if occurrences must be isolated
+	private final int level; // Level of the squares searched, whose quadrants are the blocks
+	private final HashMap<QuadNode, int[]> memo = new HashMap<QuadNode, int[]>(); // Occurrences found in each square, as column, row and shape
+
+	/**
+	 * An orientation of a pattern, as rows of bits from the south edge. Bit i of word j in a row is column 64j + i.
+	 */
+	private static class Shape {
+		final int pattern, transform, width, height;
+		final long[][] rows;
+		final long[] segments; // The rolling hash input of each row
+		final long hash, power; // Hash of the whole Shape, and the weight of its first row in the hash
+
+		Shape(int pattern, int transform, int width, int height, long[][] rows) {
+			this.pattern = pattern;
+			this.transform = transform;
+			this.width = width;
+			this.height = height;
+			this.rows = rows;
+			segments = new long[height];
+			long h = 0, p = 1;
+			for (int i = 0; i < height; i++) {
+				segments[i] = segment(rows[i], 0, width);
+				h = h * BASE + segments[i];
+				if (i > 0)
+					p *= BASE;
+			}
+			hash = h;
+			power = p;
+		}
+	}
+
+	/**
+	 * Constructor, which prepares every orientation of the pattern
+	 * @param pattern the cells to search for, including the dead cells of its region
+	 * @param isolated whether occurrences must be surrounded by dead cells, so that parts of larger objects aren't counted
+	 */
+	public PatternSearch(Patch pattern, boolean isolated) {
+		this(new Patch[] {pattern}, isolated);
+	}
+
+	/**
+	 * Constructor, which prepares every orientation of several patterns to be searched for at once. Orientations that look like an orientation of an earlier
+	 * pattern are left out.
+	 * @param patterns the cells to search for, including the dead cells of their regions
+	 * @param isolated whether occurrences must be surrounded by dead cells, so that parts of larger objects aren't counted
+	 */
+	public PatternSearch(Patch[] patterns, boolean isolated) {
+		pad = isolated ? 1 : 0;
+		int size = 1;
+		for (int i = 0; i < patterns.length; i++) {
+			Patch pattern = patterns[i];
+			if (pattern == null || pattern.node.population == 0)
+				continue;
+			for (int t = 0; t < 8; t++) {
+				Shape s = shape(pattern.transform(t), i, t);
+				boolean repeated = false; // Symmetric patterns look the same under several transforms
+				for (Shape other: shapes)
+					repeated |= other.width == s.width && other.height == s.height && Arrays.deepEquals(other.rows, s.rows);
+				if (!repeated) {
+					shapes.add(s);
+					size = Math.max(size, Math.max(s.width, s.height));
+				}
+			}
+		}
+		level = Math.max(3, 33 - Integer.numberOfLeadingZeros(size - 1)); // Blocks are at least as wide as the pattern
+	}
+
+	/**
+	 * Packs an orientation of a pattern into rows, surrounded by the dead border
+	 * @param p the pattern after transforming
+	 * @param pattern the index of the pattern
+	 * @param t the transform
+	 * @return Shape
+	 */
+	private Shape shape(Patch p, int pattern, int t) {
+		int width = p.width + 2 * pad, height = p.height + 2 * pad;
+		long[][] rows = new long[height][(width + 63) / 64];
+		int half = p.node.level == 0 ? 0 : 1 << (p.node.level - 1), cx = p.x + half, cy = p.y + half; // Center of the Patch's node
+		CellIterator it = new CellIterator(p.node, p.left - cx, p.bottom - cy, p.left + p.width - 1 - cx, p.bottom + p.height - 1 - cy);
+		while (it.next()) {
+			int u = it.getX() + cx - p.left + pad, v = it.getY() + cy - p.bottom + pad;
+			rows[v][u >>> 6] |= 1L << (u & 63);
+		}
+		return new Shape(pattern, t, width, height, rows);
+	}
+
+	/**
+	 * Finds the occurrences of the patterns
+	 * @param root a QuadNode centered on the origin
+	 * @return the occurrences, as {x, y, transform, pattern}, where (x, y) is the SW corner of the pattern's region after transforming it
+	 */
+	public ArrayList<int[]> find(QuadNode root) {
+		ArrayList<int[]> matches = new ArrayList<int[]>();
+		if (shapes.isEmpty() || root.population == 0)
+			return matches;
+		if (memo.size() > MEMO_LIMIT)
+			memo.clear();
+		while (root.level < level)
+			root = root.expand();
+		root = root.expand(); // Leaves a margin of empty blocks around the live cells, so that no square reaches outside the root
+
+		QuadNode empty = QuadNode.newEmpty(root.level);
+		long corner = -(1L << (root.level - 1)); // SW corner of the root
+		visit(root, empty, empty, empty, corner, corner, matches);
+		return matches;
+	}
+
+	/**
+	 * Searches the squares whose SW blocks lie in a QuadNode, skipping QuadNodes that are empty along with their neighbors
+	 * @param q
+	 * @param e the QuadNode east of q
+	 * @param n the QuadNode north of q
+	 * @param ne the QuadNode northeast of q
+	 * @param x the west edge of q
+	 * @param y the south edge of q
+	 * @param matches
+	 */
+	private void visit(QuadNode q, QuadNode e, QuadNode n, QuadNode ne, long x, long y, ArrayList<int[]> matches) {
+		if (q.population == 0 && e.population == 0 && n.population == 0 && ne.population == 0)
+			return;
+		if (q.level == level - 1) {
+			QuadNode square = QuadNode.newNode(n, ne, q, e);
+			int[] found = memo.get(square);
+			if (found == null) {
+				found = search(square);
+				memo.put(square, found);
+			}
+			for (int m = 0; m < found.length; m += 3) {
+				Shape shape = shapes.get(found[m + 2]);
+				matches.add(new int[] {(int) (x + found[m] + pad), (int) (y + found[m + 1] + pad), shape.transform, shape.pattern});
+			}
+			return;
+		}
+		long half = 1L << (q.level - 1);
+		visit(q.sw, q.se, q.nw, q.ne, x, y, matches);
+		visit(q.se, e.sw, q.ne, e.nw, x + half, y, matches);
+		visit(q.nw, q.ne, n.sw, n.se, x, y + half, matches);
+		visit(q.ne, e.nw, n.se, ne.sw, x + half, y + half, matches);
+	}
+
+	/**
+	 * Finds the occurrences in a square whose SW corners lie in its SW quadrant
+	 * @param square
+	 * @return the occurrences, as column, row and shape index triples
+	 */
+	private int[] search(QuadNode square) {
+		int side = 1 << square.level, half = side / 2;
+		long[][] rows = new long[side][(side + 63) / 64];
+		CellIterator it = new CellIterator(square, -half, -half, half - 1, half - 1);
+		while (it.next()) {
+			int u = it.getX() + half, v = it.getY() + half;
+			rows[v][u >>> 6] |= 1L << (u & 63);
+		}
+
+		ArrayList<Integer> found = new ArrayList<Integer>();
+		long[] segments = new long[side];
+		for (int s = 0; s < shapes.size(); s++) {
+			Shape shape = shapes.get(s);
+			for (int x = 0; x < half; x++) {
+				for (int y = 0; y < side; y++)
+					segments[y] = segment(rows[y], x, shape.width);
+				long h = 0;
+				for (int y = 0; y < shape.height; y++)
+					h = h * BASE + segments[y];
+				for (int y = 0; y < half; y++) {
+					if (h == shape.hash && matches(rows, x, y, shape)) {
+						found.add(x);
+						found.add(y);
+						found.add(s);
+					}
+					h = (h - segments[y] * shape.power) * BASE + segments[y + shape.height];
+				}
+			}
+		}
+
+		int[] result = new int[found.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = found.get(i);
+		return result;
+	}
+
+	/**
+	 * Checks cell by cell whether a Shape occurs at a position
+	 * @param rows
+	 * @param x
+	 * @param y
+	 * @param shape
+	 * @return boolean
+	 */
+	private static boolean matches(long[][] rows, int x, int y, Shape shape) {
+		for (int i = 0; i < shape.height; i++)
+			for (int c = 0; c < shape.width; c += 64)
+				if (bits(rows[y + i], x + c, Math.min(64, shape.width - c)) != bits(shape.rows[i], c, Math.min(64, shape.width - c)))
+					return false;
+		return true;
+	}
+
+	/**
+	 * Hashes the bits of a row from one column to another, which for rows up to 64 cells wide are the bits themselves
+	 * @param row
+	 * @param from
+	 * @param count
+	 * @return long
+	 */
+	private static long segment(long[] row, int from, int count) {
+		long h = 0;
+		for (int c = 0; c < count; c += 64)
+			h = h * BASE + bits(row, from + c, Math.min(64, count - c));
+		return h;
+	}
+
+	/**
+	 * Gets up to 64 bits of a row
+	 * @param row
+	 * @param from
+	 * @param count
+	 * @return the bits, with the first one lowest
+	 */
+	private static long bits(long[] row, int from, int count) {
+		int word = from >>> 6, offset = from & 63;
+		long v = word < row.length ? row[word] >>> offset : 0;
+		if (offset != 0 && word + 1 < row.length)
+			v |= row[word + 1] << (64 - offset);
+		return count == 64 ? v : v & ((1L << count) - 1);
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Progress is shared between a load or save running in the background and the dialog showing how far it has gotten. The job reports its work as it goes, and each
+ * report throws once the user has cancelled, so the job stops at the next step.
+ */
+
+package hashlife;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+public class Progress {
+	private volatile long done, total; // Units of work finished, out of the total
+	private volatile boolean cancelled;
+
+	/**
+	 * A load or save that reports its progress
+	 */
+	public interface Job<T> {
+		T run(Progress progress) throws Exception;
+	}
+
+	/**
+	 * Sets how much work there is in all, and starts over from none
+	 * @param total
+	 */
+	public void start(long total) {
+		this.total = total;
+		done = 0;
+	}
+
+	/**
+	 * Reports finished work
+	 * @param n
+	 * @throws InterruptedIOException if the job has been cancelled
+	 */
+	public void advance(long n) throws InterruptedIOException {
+		done += n;
+		if (cancelled)
+			throw new InterruptedIOException("Cancelled");
+	}
+
+	/**
+	 * Gets how much of the work is finished
+	 * @return a fraction from 0 to 1
+	 */
+	public double getFraction() {
+		long t = total;
+		return t <= 0 ? 0 : Math.min(1, done / (double) t);
+	}
+
+	/**
+	 * Asks the job to stop at its next step
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Checks whether the job has been asked to stop
+	 * @return boolean
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Wraps a stream so that reading from it reports progress, in bytes
+	 * @param in
+	 * @param progress may be null
+	 * @return InputStream
+	 */
+	public static InputStream track(InputStream in, Progress progress) {
+		if (progress == null)
+			return in;
+		return new FilterInputStream(in) {
+			public int read() throws IOException {
+				int c = super.read();
+				progress.advance(c < 0 ? 0 : 1);
+				return c;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				progress.advance(Math.max(n, 0));
+				return n;
+			}
+		};
+	}
+}
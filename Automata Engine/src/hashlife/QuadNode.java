@@ -12,15 +12,27 @@
 
 package hashlife;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 public class QuadNode {
 	final QuadNode nw, ne, sw, se; // Children of QuadNode
-	final int level, population; // Height of QuadNode in the Quadtree
+	final int level; // Height of QuadNode in the Quadtree
+	final long population; // Number of live cells, which can pass 2^31 in large patterns
+	final int state; // State of a single cell (0 is dead, 1 is alive, and higher states are dying). Larger QuadNodes have a nonzero state if any of their cells isn't dead
+	final long fingerprint; // Hash of the QuadNode's contents, which is the same in every session and process
 	QuadNode result; // The QuadNode (one level down) that results from evolving this QuadNode
 	boolean updatedToTransition = false; // Whether result has been computed for the current ruleset
+	QuadNode inverse; // The QuadNode with every cell inverted, once it has been computed
+	private QuadNode[] orientations; // The QuadNode under each transform, as they are computed
+	private int[] bounds; // Bounding box of the live cells as {minX, minY, maxX, maxY}, measured from the SW corner, once it has been computed
+	private static final int[] NO_BOUNDS = new int[0], CELL_BOUNDS = {0, 0, 0, 0}; // Bounds of QuadNodes without live cells and of live cells
 	
 	/// CREATING NODES ///
 
@@ -29,9 +41,19 @@ public class QuadNode {
 	 * @param alive
 	 */
 	public QuadNode(boolean alive) {
+		this(alive ? 1 : 0);
+	}
+
+	/**
+	 * Constructor that creates a single cell in any state. Only state 1 counts towards population.
+	 * @param state
+	 */
+	public QuadNode(int state) {
 		nw = ne = sw = se = result = null;
 		level = 0;
-		population = alive ? 1 : 0;
+		population = state == 1 ? 1 : 0;
+		this.state = state;
+		fingerprint = mix(state + 1);
 	}
 
 	/**
@@ -49,6 +71,19 @@ public class QuadNode {
 
 		level = nw.level + 1;
 		population = nw.population + ne.population + sw.population + se.population;
+		state = nw.state | ne.state | sw.state | se.state;
+		fingerprint = mix(mix(mix(mix(level * FINGERPRINT_PRIME + nw.fingerprint) * FINGERPRINT_PRIME + ne.fingerprint) * FINGERPRINT_PRIME + sw.fingerprint) * FINGERPRINT_PRIME + se.fingerprint);
+	}
+
+	/**
+	 * Scrambles the bits of a number, so that similar inputs give unrelated outputs (the finalizer of SplitMix64)
+	 * @param h
+	 * @return long
+	 */
+	private static long mix(long h) {
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
 	}
 
 	/**
@@ -60,6 +95,15 @@ public class QuadNode {
 		return new QuadNode(alive).intern();
 	}
 
+	/**
+	 * Creates a canonicalized QuadNode using QuadNode(state) and intern()
+	 * @param state
+	 * @return new QuadNode(state).intern();
+	 */
+	public static QuadNode newNode(int state) {
+		return new QuadNode(state).intern();
+	}
+
 	/**
 	 * Creates a canonicalized QuadNode using QuadNode(nw, ne, sw, se) and intern()
 	 * @param nw
@@ -78,10 +122,26 @@ public class QuadNode {
 	 * @return (2^level) x (2^level) QuadNode with all dead squares
 	 */
 	public static QuadNode newEmpty(int level) {
-		if (level == 0)
-			return newNode(false);
-		QuadNode subnode = newEmpty(level - 1);
-		return newNode(subnode, subnode, subnode, subnode);
+		QuadNode q = empties[level];
+		if (q == null) {
+			QuadNode subnode = level == 0 ? null : newEmpty(level - 1);
+			q = empties[level] = level == 0 ? newNode(false) : newNode(subnode, subnode, subnode, subnode);
+		}
+		return q;
+	}
+
+	/**
+	 * Creates a QuadNode of side length 2^level where every cell is alive
+	 * @param level
+	 * @return (2^level) x (2^level) QuadNode with all live squares
+	 */
+	public static QuadNode newFull(int level) {
+		QuadNode q = fulls[level];
+		if (q == null) {
+			QuadNode subnode = level == 0 ? null : newFull(level - 1);
+			q = fulls[level] = level == 0 ? newNode(true) : newNode(subnode, subnode, subnode, subnode);
+		}
+		return q;
 	}
 
 	/**
@@ -134,22 +194,26 @@ public class QuadNode {
 
 	/// CANONICALIZING NODES ///
 
-	static HashMap<QuadNode, QuadNode> hashMap = new HashMap<QuadNode, QuadNode>(); // Stores canonical nodes
+	static ConcurrentHashMap<QuadNode, QuadNode> hashMap = new ConcurrentHashMap<QuadNode, QuadNode>(); // Stores canonical nodes. Concurrent so that nodes can be built in parallel
+	static NodeStore store; // Node store shared with other processes, if one is attached
+	private static final QuadNode[] empties = new QuadNode[64], fulls = new QuadNode[64]; // Canonical empty and full QuadNodes of each level
+	private static final long FINGERPRINT_PRIME = 0x100000001B3L; // Combines the fingerprints of the children
 
 	/**
-	 * Creates a unique hash code for the QuadNode
-	 * @return System.identityHashCode(nw) + 
-			   11 * System.identityHashCode(ne) +
-			  101 * System.identityHashCode(sw) +
-			 1007 * System.identityHashCode(se)
+	 * Creates a hash code for the QuadNode from its fingerprint, so that it's the same in every session
+	 * @return the fingerprint folded into an int
 	 */
 	public int hashCode() {
-		if (level == 0)
-			return population;
-		return System.identityHashCode(nw) + 
-				11 * System.identityHashCode(ne) +
-				101 * System.identityHashCode(sw) +
-				1007 * System.identityHashCode(se);
+		return hash(fingerprint);
+	}
+
+	/**
+	 * Folds a fingerprint into a hash code
+	 * @param fingerprint
+	 * @return int
+	 */
+	private static int hash(long fingerprint) {
+		return (int) (fingerprint ^ fingerprint >>> 32);
 	}
 
 	/**
@@ -161,7 +225,7 @@ public class QuadNode {
 		if (level != q.level)
 			return false;
 		if (level == 0)
-			return population == q.population;
+			return state == q.state;
 		return nw == q.nw && ne == q.ne && sw == q.sw && se == q.se;
 	}
 
@@ -173,8 +237,36 @@ public class QuadNode {
 		QuadNode node = hashMap.get(this);
 		if (node != null)
 			return node;
-		hashMap.put(this, this);
-		return this;
+		node = hashMap.putIfAbsent(this, this); // Another thread may have added an equal node since the lookup
+		return node == null ? this : node;
+	}
+
+	/**
+	 * Finds the canonical QuadNode with a fingerprint, so that nodes saved in one session can be matched to the nodes of another without walking their cells
+	 * @param fingerprint
+	 * @return QuadNode, or null if no canonical QuadNode has the fingerprint
+	 */
+	public static QuadNode find(long fingerprint) {
+		return hashMap.get(new FingerprintKey(fingerprint));
+	}
+
+	/**
+	 * Looks up QuadNodes in hashMap by fingerprint alone. Lookups call equals on the key being looked up, so the key only needs the same hash code as the QuadNode.
+	 */
+	private static class FingerprintKey {
+		private final long fingerprint;
+
+		FingerprintKey(long fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+
+		public int hashCode() {
+			return hash(fingerprint);
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof QuadNode && ((QuadNode) o).fingerprint == fingerprint;
+		}
 	}
 
 	/// EVOLVING NODES ///
@@ -187,33 +279,22 @@ public class QuadNode {
 	public QuadNode evolve() {
 		if (result != null && updatedToTransition) // If there is a cached result, then return that
 			return result;
-		if (level == 2) { // If the level is 2, then compute the transition directly
-			QuadNode[] nines = new QuadNode[] {newNode(nw, 
-											   		   newNode(nw.ne, ne.nw, nw.se, ne.sw), 
-											   		   newNode(nw.sw, nw.se, sw.nw, sw.ne), 
-											   		   newNode(nw.se, ne.sw, sw.ne, se.nw)), 
-											   newNode(newNode(nw.ne, ne.nw, nw.se, ne.sw),
-													   ne,
-													   newNode(nw.se, ne.sw, sw.ne, se.nw),
-													   newNode(ne.sw, ne.se, se.nw, se.ne)), 
-											   newNode(newNode(nw.sw, nw.se, sw.nw, sw.ne),
-													   newNode(nw.se, ne.sw, sw.ne, se.nw),
-													   sw,
-													   newNode(sw.ne, se.nw, sw.se, se.sw)), 
-											   newNode(newNode(nw.se, ne.sw, sw.ne, se.nw),
-													   newNode(ne.sw, ne.se, se.nw, se.ne),
-													   newNode(sw.ne, se.nw, sw.se, se.sw),
-													   se)}; // Creates the neighborhoods of the four center squares of the 4x4 supersquare
-			QuadNode[] results = new QuadNode[4];
-			for (int i = 0; i < 4; i++) {
-				QuadNode q = nines[i];
-				int n = countNeighbors(q);
-				if ((q.nw.se.population == 0 && NodeManager.t.birth.contains(n)) || (q.nw.se.population == 1 && NodeManager.t.survive.contains(n))) // Determines how a single cell evolves
-					results[i] = newNode(true);
-				else
-					results[i] = newNode(false);
+		NodeStore shared = store;
+		if (shared != null && level == NodeStore.RESULT_LEVEL) { // If another process has evolved this node, then use its result
+			QuadNode r = shared.getResult(this);
+			if (r != null) {
+				result = r;
+				updatedToTransition = true;
+				return result;
 			}
-			result = newNode(results[0], results[1], results[2], results[3]);
+		}
+		if (level == 2) { // If the level is 2, then look up the transition of the 4x4 block in the rule's compiled table
+			Transitions t = NodeManager.t;
+			int next = t.base[cellBits()];
+			result = newNode(newNode(t.nextState(nw.se.state, (next & 8) != 0)), 
+							 newNode(t.nextState(ne.sw.state, (next & 4) != 0)), 
+							 newNode(t.nextState(sw.ne.state, (next & 2) != 0)), 
+							 newNode(t.nextState(se.nw.state, (next & 1) != 0)));
 			updatedToTransition = true;
 			return result;
 		}											  		//		XXXXXXXXXXXX
@@ -231,28 +312,20 @@ public class QuadNode {
 						 newNode(n4, n5, n7, n8).evolve(),
 						 newNode(n5, n6, n8, n9).evolve()); // Otherwise, recursively evolve children
 		updatedToTransition = true;
+		if (shared != null && level == NodeStore.RESULT_LEVEL)
+			shared.putResult(this, result);
 		return result;
 	}		
 
 	/**
-	 * Counts the live neighbors of a center cell in a 3x3 node q
-	 * @param q
-	 * @return
+	 * Packs the cells of a 4x4 QuadNode into the index of Transitions.base
+	 * @return the cells row by row from the top, with the NW corner as the highest bit
 	 */
-	public static int countNeighbors(QuadNode q) { 
-		if (NodeManager.t.neighborhood == 0) // Moore neighborhood, a 3x3 square (all adjacent squares)
-			return (q.nw.population - q.nw.se.population) + // subtraction avoids counting the center square
-					(q.ne.ne.population + q.ne.se.population) +
-					(q.sw.sw.population + q.sw.se.population) +
-					(q.se.se.population);
-		else if (NodeManager.t.neighborhood == 1) // Von Neumann neighborhood, a cross (all squares with bordering edges)
-			return q.nw.ne.population +
-					q.nw.sw.population +
-					q.se.sw.population +
-					q.se.ne.population;
-		else
-			return (q.nw.population - q.nw.se.population) + // Hexagonal neighborhood, a Moore neighborhood without the upper right and lower left corners
-					(q.se.population - q.nw.se.population);
+	int cellBits() {
+		return (int) (nw.nw.population << 15 | nw.ne.population << 14 | ne.nw.population << 13 | ne.ne.population << 12 |
+				nw.sw.population << 11 | nw.se.population << 10 | ne.sw.population << 9 | ne.se.population << 8 |
+				sw.nw.population << 7 | sw.ne.population << 6 | se.nw.population << 5 | se.ne.population << 4 |
+				sw.sw.population << 3 | sw.se.population << 2 | se.sw.population << 1 | se.se.population);
 	}
 
 	/// MODIFYING NODES ///	
@@ -303,6 +376,330 @@ public class QuadNode {
 	}
 	
 	
+	/// EDITING REGIONS ///
+
+	static final int PARALLEL_LEVEL = 9; // Random fills of QuadNodes above this level fill their quadrants in parallel
+	private static final QuadNode[] blocks = new QuadNode[1 << 16]; // Canonical 4x4 QuadNodes of two states, indexed like cellBits()
+
+	/**
+	 * Sets every cell in a rectangle, relative to the QuadNode's coordinate system, to alive or dead. QuadNodes inside the rectangle are replaced whole by canonical full
+	 * or empty QuadNodes, so only the QuadNodes along the rectangle's edges are rebuilt.
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @param alive
+	 * @return the QuadNode except with the rectangle filled
+	 */
+	public QuadNode fillRect(int x0, int y0, int x1, int y1, boolean alive) {
+		return fillRect(x0, y0, x1, y1, alive, 0, 0);
+	}
+
+	private QuadNode fillRect(int x0, int y0, int x1, int y1, boolean alive, int cx, int cy) {
+		int half = level == 0 ? 0 : 1 << (level - 1), reach = Math.max(half - 1, 0); // The QuadNode spans [cx - half, cx + reach]
+		if (x1 < cx - half || x0 > cx + reach || y1 < cy - half || y0 > cy + reach) // Outside the rectangle
+			return this;
+		if (x0 <= cx - half && x1 >= cx + reach && y0 <= cy - half && y1 >= cy + reach) // Inside the rectangle
+			return alive ? newFull(level) : newEmpty(level);
+		int e = cx + half / 2, w = cx - (half - half / 2), n = cy + half / 2, s = cy - (half - half / 2); // Centers of the children
+		return newNode(nw.fillRect(x0, y0, x1, y1, alive, w, n), ne.fillRect(x0, y0, x1, y1, alive, e, n),
+					   sw.fillRect(x0, y0, x1, y1, alive, w, s), se.fillRect(x0, y0, x1, y1, alive, e, s));
+	}
+
+	/**
+	 * Inverts every cell in a rectangle, relative to the QuadNode's coordinate system. QuadNodes inside the rectangle are replaced by their memoized inverses.
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @return the QuadNode except with the rectangle inverted
+	 */
+	public QuadNode invertRect(int x0, int y0, int x1, int y1) {
+		return invertRect(x0, y0, x1, y1, 0, 0);
+	}
+
+	private QuadNode invertRect(int x0, int y0, int x1, int y1, int cx, int cy) {
+		int half = level == 0 ? 0 : 1 << (level - 1), reach = Math.max(half - 1, 0);
+		if (x1 < cx - half || x0 > cx + reach || y1 < cy - half || y0 > cy + reach)
+			return this;
+		if (x0 <= cx - half && x1 >= cx + reach && y0 <= cy - half && y1 >= cy + reach)
+			return invert();
+		int e = cx + half / 2, w = cx - (half - half / 2), n = cy + half / 2, s = cy - (half - half / 2);
+		return newNode(nw.invertRect(x0, y0, x1, y1, w, n), ne.invertRect(x0, y0, x1, y1, e, n),
+					   sw.invertRect(x0, y0, x1, y1, w, s), se.invertRect(x0, y0, x1, y1, e, s));
+	}
+
+	/**
+	 * Inverts every cell in the QuadNode. Dying cells become alive, like in flipCell.
+	 * @return the inverted QuadNode
+	 */
+	QuadNode invert() {
+		if (inverse == null)
+			inverse = level == 0 ? newNode(population == 0) : newNode(nw.invert(), ne.invert(), sw.invert(), se.invert());
+		return inverse;
+	}
+
+	/**
+	 * Randomizes every cell in a rectangle, relative to the QuadNode's coordinate system. The cells are generated 64 at a time as the bits of a random number, one number
+	 * for each 8x8 QuadNode the rectangle touches. Each 8x8 QuadNode gets its own random generator seeded from its position, so the same seed always gives the same cells.
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @param density the chance that each cell is alive, to 16 binary digits
+	 * @param seed
+	 * @return the QuadNode except with the rectangle randomized
+	 */
+	public QuadNode randomRect(int x0, int y0, int x1, int y1, double density, long seed) {
+		int chance = (int) Math.round(Math.min(Math.max(density, 0), 1) * 65536); // Out of 65536
+		if (chance == 0 || chance == 65536)
+			return fillRect(x0, y0, x1, y1, chance != 0);
+		return randomRect(x0, y0, x1, y1, chance, seed, 0, 0);
+	}
+
+	private QuadNode randomRect(int x0, int y0, int x1, int y1, int chance, long seed, int cx, int cy) {
+		int half = 1 << (level - 1);
+		if (x1 < cx - half || x0 > cx + half - 1 || y1 < cy - half || y0 > cy + half - 1)
+			return this;
+		if (level == 3) { // Builds the 8x8 QuadNode from the bits of a random number
+			long mask = 0, row = 0; // The cells inside the rectangle, with bit 8 * r + c for row r from the north and column c from the west
+			for (int c = Math.max(x0 - cx + 4, 0); c <= Math.min(x1 - cx + 4, 7); c++)
+				row |= 1L << c;
+			for (int r = Math.max(cy + 3 - y1, 0); r <= Math.min(cy + 3 - y0, 7); r++)
+				mask |= row << (8 * r);
+
+			SplittableRandom rng = new SplittableRandom(seed ^ cx * 0x9E3779B97F4A7C15L ^ cy * 0xC2B2AE3D27D4EB4FL);
+			long bits = 0;
+			for (int b = Integer.numberOfTrailingZeros(chance); b < 16; b++) // Each bit of chance, from the lowest, either ORs or ANDs in a new random number
+				bits = (chance >>> b & 1) != 0 ? bits | rng.nextLong() : bits & rng.nextLong();
+			return fromBits(bits, mask, 0, 0);
+		}
+
+		int e = cx + half / 2, w = cx - half / 2, n = cy + half / 2, s = cy - half / 2;
+		if (level > PARALLEL_LEVEL) {
+			ForkJoinTask<QuadNode> fnw = ForkJoinTask.adapt(() -> nw.randomRect(x0, y0, x1, y1, chance, seed, w, n)).fork(),
+								   fne = ForkJoinTask.adapt(() -> ne.randomRect(x0, y0, x1, y1, chance, seed, e, n)).fork(),
+								   fsw = ForkJoinTask.adapt(() -> sw.randomRect(x0, y0, x1, y1, chance, seed, w, s)).fork();
+			QuadNode qse = se.randomRect(x0, y0, x1, y1, chance, seed, e, s);
+			return newNode(fnw.join(), fne.join(), fsw.join(), qse);
+		}
+		return newNode(nw.randomRect(x0, y0, x1, y1, chance, seed, w, n), ne.randomRect(x0, y0, x1, y1, chance, seed, e, n),
+					   sw.randomRect(x0, y0, x1, y1, chance, seed, w, s), se.randomRect(x0, y0, x1, y1, chance, seed, e, s));
+	}
+
+	/**
+	 * Rebuilds part of an 8x8 QuadNode from the bits of a number, keeping the cells outside the mask
+	 * @param bits the cells, with bit 8 * r + c for row r from the north and column c from the west
+	 * @param mask the cells to take from bits
+	 * @param col column of this QuadNode's NW cell
+	 * @param row row of this QuadNode's NW cell
+	 * @return QuadNode
+	 */
+	private QuadNode fromBits(long bits, long mask, int col, int row) {
+		if (level == 0) {
+			int i = 8 * row + col;
+			return (mask >>> i & 1) == 0 ? this : (bits >>> i & 1) == 0 ? newEmpty(0) : newFull(0);
+		}
+		if (level == 2 && (mask >>> (8 * row + col) & 0x0F0F0F0FL) == 0x0F0F0F0FL) { // The whole 4x4 QuadNode is replaced, so look it up by its cells
+			int index = 0;
+			for (int r = 0; r < 4; r++)
+				for (int c = 0; c < 4; c++)
+					index = index << 1 | (int) (bits >>> (8 * (row + r) + col + c) & 1);
+			return block(index);
+		}
+		int side = 1 << (level - 1); // Side length of the children
+		return newNode(nw.fromBits(bits, mask, col, row), ne.fromBits(bits, mask, col + side, row),
+					   sw.fromBits(bits, mask, col, row + side), se.fromBits(bits, mask, col + side, row + side));
+	}
+
+	/**
+	 * Gets the 4x4 QuadNode with the given cells, building it the first time
+	 * @param index the cells, packed like cellBits()
+	 * @return QuadNode
+	 */
+	static QuadNode block(int index) {
+		QuadNode q = blocks[index];
+		if (q == null) {
+			QuadNode[] cells = new QuadNode[16];
+			for (int i = 0; i < 16; i++)
+				cells[i] = (index >>> (15 - i) & 1) == 0 ? newEmpty(0) : newFull(0);
+			q = blocks[index] = newNode(newNode(cells[0], cells[1], cells[4], cells[5]), newNode(cells[2], cells[3], cells[6], cells[7]),
+										newNode(cells[8], cells[9], cells[12], cells[13]), newNode(cells[10], cells[11], cells[14], cells[15]));
+		}
+		return q;
+	}
+
+	/**
+	 * Counts the live cells in a rectangle, relative to the QuadNode's coordinate system. QuadNodes that are empty or entirely inside or outside the rectangle aren't
+	 * descended into.
+	 * @param x0 west edge
+	 * @param y0 south edge
+	 * @param x1 east edge (inclusive)
+	 * @param y1 north edge (inclusive)
+	 * @return number of live cells
+	 */
+	public long countRect(int x0, int y0, int x1, int y1) {
+		return countRect(x0, y0, x1, y1, 0, 0);
+	}
+
+	private long countRect(int x0, int y0, int x1, int y1, int cx, int cy) {
+		int half = level == 0 ? 0 : 1 << (level - 1), reach = Math.max(half - 1, 0);
+		if (population == 0 || x1 < cx - half || x0 > cx + reach || y1 < cy - half || y0 > cy + reach)
+			return 0;
+		if (x0 <= cx - half && x1 >= cx + reach && y0 <= cy - half && y1 >= cy + reach)
+			return population;
+		int e = cx + half / 2, w = cx - (half - half / 2), n = cy + half / 2, s = cy - (half - half / 2);
+		return nw.countRect(x0, y0, x1, y1, w, n) + ne.countRect(x0, y0, x1, y1, e, n) +
+			   sw.countRect(x0, y0, x1, y1, w, s) + se.countRect(x0, y0, x1, y1, e, s);
+	}
+
+	/**
+	 * Gets the bounding box of the live cells, which is memoized so that only QuadNodes that haven't been measured before are visited
+	 * @return {minX, minY, maxX, maxY} measured from the SW corner, or an empty array if there are no live cells
+	 */
+	int[] bounds() {
+		if (bounds == null) {
+			if (population == 0)
+				bounds = NO_BOUNDS;
+			else if (level == 0)
+				bounds = CELL_BOUNDS;
+			else {
+				int side = 1 << (level - 1); // Side length of the children
+				int[] box = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+				include(box, nw.bounds(), 0, side);
+				include(box, ne.bounds(), side, side);
+				include(box, sw.bounds(), 0, 0);
+				include(box, se.bounds(), side, 0);
+				bounds = box;
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * Grows a bounding box to include a child's bounding box
+	 * @param box
+	 * @param child
+	 * @param dx offset of the child's SW corner
+	 * @param dy
+	 */
+	private static void include(int[] box, int[] child, int dx, int dy) {
+		if (child.length == 0)
+			return;
+		box[0] = Math.min(box[0], child[0] + dx);
+		box[1] = Math.min(box[1], child[1] + dy);
+		box[2] = Math.max(box[2], child[2] + dx);
+		box[3] = Math.max(box[3], child[3] + dy);
+	}
+
+	static final int FLIP_X = 1, FLIP_Y = 2, TRANSPOSE = 4; // Transforms, which combine into the eight symmetries of a square. Flips happen before transposing
+	static final int ROTATE_CW = FLIP_X | TRANSPOSE, ROTATE_CCW = FLIP_Y | TRANSPOSE, ROTATE_180 = FLIP_X | FLIP_Y, FLIP_ANTIDIAGONAL = FLIP_X | FLIP_Y | TRANSPOSE;
+
+	/**
+	 * Transforms the QuadNode within its own square. Results are memoized on each QuadNode, so transforming costs about one step per distinct QuadNode.
+	 * @param t a combination of FLIP_X (mirror east to west), FLIP_Y (mirror north to south), and TRANSPOSE (swap x and y)
+	 * @return the transformed QuadNode
+	 */
+	public QuadNode transform(int t) {
+		if (t == 0 || level == 0 || state == 0)
+			return this;
+		QuadNode[] memo = orientations;
+		if (memo == null)
+			memo = orientations = new QuadNode[8];
+		QuadNode q = memo[t];
+		if (q == null) {
+			QuadNode[] moved = new QuadNode[4]; // Children indexed by north * 2 + east after transforming
+			QuadNode[] children = {sw, se, nw, ne};
+			for (int i = 0; i < 4; i++) {
+				int east = i & 1, north = i >> 1;
+				if ((t & FLIP_X) != 0)
+					east ^= 1;
+				if ((t & FLIP_Y) != 0)
+					north ^= 1;
+				moved[(t & TRANSPOSE) != 0 ? east * 2 + north : north * 2 + east] = children[i].transform(t);
+			}
+			q = memo[t] = newNode(moved[2], moved[3], moved[0], moved[1]);
+		}
+		return q;
+	}
+
+	static enum mergeModes {OR, XOR, AND_NOT}; // Ways to merge QuadNodes: place cells, toggle cells, or erase cells
+
+	/**
+	 * Merges two QuadNodes of the same level cell by cell, counting any cell that isn't dead as alive. Pairs of QuadNodes that have already been merged are looked up
+	 * instead of merged again, so repeated parts of b only cost once.
+	 * @param a
+	 * @param b
+	 * @param mode OR places b's cells, XOR toggles them, and AND_NOT erases them
+	 * @return the merged QuadNode
+	 */
+	public static QuadNode merge(QuadNode a, QuadNode b, mergeModes mode) {
+		return merge(a, b, mode, new HashMap<Pair, QuadNode>());
+	}
+
+	private static QuadNode merge(QuadNode a, QuadNode b, mergeModes mode, HashMap<Pair, QuadNode> memo) {
+		if (b.state == 0)
+			return a;
+		switch (mode) {
+		case OR:
+			if (a == b || a.state == 0 || a.level == 0)
+				return b;
+			break;
+		case XOR:
+			if (a.state == 0)
+				return b;
+			if (a == b || a.level == 0)
+				return newEmpty(a.level);
+			break;
+		default:
+			if (a.state == 0 || a == b || a.level == 0)
+				return newEmpty(a.level);
+		}
+
+		Pair key = new Pair(a, b);
+		QuadNode q = memo.get(key);
+		if (q == null) {
+			q = newNode(merge(a.nw, b.nw, mode, memo), merge(a.ne, b.ne, mode, memo), merge(a.sw, b.sw, mode, memo), merge(a.se, b.se, mode, memo));
+			memo.put(key, q);
+		}
+		return q;
+	}
+
+	/**
+	 * Key for memoizing operations on two QuadNodes, comparing them by identity since they are canonical
+	 */
+	static class Pair {
+		final QuadNode a, b;
+
+		Pair(QuadNode a, QuadNode b) {
+			this.a = a;
+			this.b = b;
+		}
+
+		public int hashCode() {
+			return System.identityHashCode(a) * 31 + System.identityHashCode(b);
+		}
+
+		public boolean equals(Object o) {
+			Pair p = (Pair) o;
+			return a == p.a && b == p.b;
+		}
+	}
+
+	/**
+	 * Combines two QuadNodes of the same level, with the cells that aren't dead in b replacing those in a
+	 * @param a
+	 * @param b
+	 * @return the union of a and b
+	 */
+	public static QuadNode union(QuadNode a, QuadNode b) {
+		if (b.state == 0 || a == b)
+			return a;
+		if (a.state == 0 || a.level == 0)
+			return b;
+		return newNode(union(a.nw, b.nw), union(a.ne, b.ne), union(a.sw, b.sw), union(a.se, b.se));
+	}
+	
 	/**
 	 * Gets the state of the cell at (x, y), relative to the QuadNode's coordinate system
 	 * @param x
@@ -325,4 +722,104 @@ public class QuadNode {
 			else
 				return sw.getCell(x + offset, y + offset, sw);
 	}
+
+	/// BUILDING NODES IN BULK ///
+
+	static final int PARALLEL_CELLS = 1 << 14; // Batches with more cells than this have their quadrants built in parallel
+
+	/**
+	 * Builds a QuadNode with the given cells alive. The cells are sorted into Morton order, in which every QuadNode's cells are contiguous, so the tree is built from the
+	 * bottom up in a single pass over the batch.
+	 * @param cells coordinates of the cells, as x0, y0, x1, y1, ... relative to the new QuadNode's coordinate system
+	 * @param count the number of cells
+	 * @param level the level of the new QuadNode, which must contain every cell
+	 * @return QuadNode
+	 */
+	public static QuadNode build(int[] cells, int count, int level) {
+		if (level > 31)
+			throw new IllegalArgumentException("Can't build a QuadNode of level " + level);
+		long half = level == 0 ? 0 : 1L << (level - 1);
+		long[] keys = new long[count];
+		for (int i = 0; i < count; i++)
+			keys[i] = morton(cells[2 * i] + half, half - 1 - cells[2 * i + 1]);
+		Arrays.parallelSort(keys);
+
+		return new Builder(keys, 0, count, level).compute();
+	}
+
+	/**
+	 * Interleaves the bits of a cell's position, measured east from the west edge and south from the north edge of a QuadNode
+	 * @param east
+	 * @param south
+	 * @return Morton key, whose lowest two bits pick the quadrant of the cell within its level 1 QuadNode (0 = NW, 1 = NE, 2 = SW, 3 = SE), the next two within its level 2 QuadNode, etc.
+	 */
+	static long morton(long east, long south) {
+		return spread(east) | spread(south) << 1;
+	}
+
+	/**
+	 * Spreads the lower 32 bits of a number out to the even bits
+	 * @param n
+	 * @return spread bits
+	 */
+	private static long spread(long n) {
+		n &= 0xFFFFFFFFL;
+		n = (n | n << 16) & 0x0000FFFF0000FFFFL;
+		n = (n | n << 8) & 0x00FF00FF00FF00FFL;
+		n = (n | n << 4) & 0x0F0F0F0F0F0F0F0FL;
+		n = (n | n << 2) & 0x3333333333333333L;
+		return (n | n << 1) & 0x5555555555555555L;
+	}
+
+	/**
+	 * Builds the QuadNode covering a run of sorted Morton keys, forking its quadrants off to other threads if the run is long
+	 */
+	private static class Builder extends RecursiveTask<QuadNode> {
+		private final long[] keys;
+		private final int from, to, level;
+
+		Builder(long[] keys, int from, int to, int level) {
+			this.keys = keys;
+			this.from = from;
+			this.to = to;
+			this.level = level;
+		}
+
+		@Override
+		protected QuadNode compute() {
+			if (from == to)
+				return newEmpty(level);
+			if (level == 0)
+				return newNode(true); // Duplicate cells end up in the same run
+
+			int shift = 2 * (level - 1); // The bits that pick a quadrant at this level
+			int ne = split(from, 1, shift), sw = split(ne, 2, shift), se = split(sw, 3, shift);
+			Builder[] quadrants = {new Builder(keys, from, ne, level - 1), new Builder(keys, ne, sw, level - 1),
+									new Builder(keys, sw, se, level - 1), new Builder(keys, se, to, level - 1)};
+			if (to - from > PARALLEL_CELLS) {
+				ForkJoinTask.invokeAll(quadrants);
+				return newNode(quadrants[0].join(), quadrants[1].join(), quadrants[2].join(), quadrants[3].join());
+			}
+			return newNode(quadrants[0].compute(), quadrants[1].compute(), quadrants[2].compute(), quadrants[3].compute());
+		}
+
+		/**
+		 * Binary searches for the first key at or after start whose quadrant at this level is at least quadrant
+		 * @param start
+		 * @param quadrant
+		 * @param shift
+		 * @return index
+		 */
+		private int split(int start, int quadrant, int shift) {
+			int lo = start, hi = to;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if ((keys[mid] >>> shift & 3) < quadrant)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+	}
 }
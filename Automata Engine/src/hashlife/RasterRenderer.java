@@ -0,0 +1,401 @@
+/**
+ * RasterRenderer draws the grid by writing colors straight into the pixels of an image that's kept from frame to frame, instead of making a Graphics call for every
+ * cell. The part of the display being drawn is split into horizontal bands, which a small pool of threads draws at the same time by walking the QuadNodes that reach
+ * into each band, and the finished image is copied to the display in one call. Cells are placed and QuadNodes are culled and shaded the same way as
+ * GridManager.drawNode, so both draw the same picture.
+ *
+ * QuadNodes a few dozen pixels across are drawn as tiles, which are kept in a TileCache and copied into the image whenever the same node is drawn again at the same
+ * zoom. A tile is drawn as though its corner fell exactly on a pixel, so cell edges inside it can land a pixel off from where GridManager.drawNode puts them when a
+ * cell's side isn't a whole number of pixels.
+ *
+ * The image is kept from frame to frame, so while the view stays put only what has changed is drawn again. The new root is compared against the last one drawn,
+ * going down only into children that aren't the same object, and the areas of the QuadNodes that differ are the only parts of the image drawn over.
+ */
+
+package hashlife;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class RasterRenderer {
+	private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	private static final int BANDS_PER_THREAD = 2; // More bands than threads keeps threads busy when some bands are emptier than others
+	private static final int MIN_TILE_LEVEL = 3; // Smaller nodes are drawn directly, since looking them up costs about as much as drawing them
+	private static final int TILE_PIXELS = 32, MAX_TILE_PIXELS = 128; // Tiles are the smallest nodes at least TILE_PIXELS across, unless they're wider than MAX_TILE_PIXELS
+	private static final int DIRTY_PIXELS = 16; // Changed nodes this many pixels across or fewer are drawn again whole, rather than looking for what changed inside them
+	private static final int BLOCK = 32; // Changed areas are merged into squares this many pixels across, since drawing many tiny areas costs more than a few bigger ones
+	private static final double MAX_DIRTY = 0.5; // Fraction of the image past which changed areas aren't worth picking out, and it's all drawn again
+	private static final ExecutorService pool = Executors.newFixedThreadPool(THREADS, r -> {
+		Thread thread = new Thread(r, "Renderer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private BufferedImage image;
+	private int[] pixels; // The image's pixels, row by row from the top
+	private int width, height;
+	private final TileCache tiles = new TileCache();
+	private int[] tilePalette, tileShades; // The colors the cached tiles and the image were drawn in
+	private QuadNode painted; // The root last drawn across the whole image, or null if the image needs to be drawn from scratch
+	private double paintedX, paintedY, paintedSide; // Where the painted root was drawn
+	private int redrawn, redrawnPixels; // How many areas the last frame drew again, and how many pixels they covered
+
+	/**
+	 * Pixels being drawn into, which are either the image or a tile
+	 */
+	private static class Canvas {
+		final int[] pixels;
+		final int width; // Pixels in a row
+		final Rectangle clip; // The part of the canvas to draw
+
+		Canvas(int[] pixels, int width, Rectangle clip) {
+			this.pixels = pixels;
+			this.width = width;
+			this.clip = clip;
+		}
+	}
+
+	/**
+	 * Gets the image, making a new one if the display has changed size
+	 * @param w
+	 * @param h
+	 * @return BufferedImage
+	 */
+	BufferedImage image(int w, int h) {
+		if (image == null || w != width || h != height) {
+			width = Math.max(w, 1);
+			height = Math.max(h, 1);
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			painted = null;
+		}
+		return image;
+	}
+
+	/**
+	 * Brings the image up to date with a QuadNode and copies part of it onto the display. If the QuadNode was last drawn in the same place, only the areas where it has
+	 * changed are drawn again, and otherwise the whole image is.
+	 * @param g
+	 * @param clip the part of the display to draw
+	 * @param root a QuadNode centered on the origin
+	 * @param x where the center of the root is on the display
+	 * @param y
+	 * @param side the side of a cell on the display
+	 * @param palette the color of each cell state
+	 * @param shades colors of QuadNodes drawn as a single pixel, from empty to full
+	 * @param w the width of the display
+	 * @param h the height of the display
+	 */
+	public void render(Graphics g, Rectangle clip, QuadNode root, double x, double y, double side, Color[] palette, Color[] shades, int w, int h) {
+		image(w, h);
+		Rectangle area = clip.intersection(new Rectangle(0, 0, width, height));
+		if (area.isEmpty())
+			return;
+		int[] rgbPalette = rgb(palette), rgbShades = rgb(shades);
+		ArrayList<Rectangle> dirty;
+		if (painted != null && x == paintedX && y == paintedY && side == paintedSide && Arrays.equals(rgbPalette, tilePalette) && Arrays.equals(rgbShades, tileShades))
+			dirty = dirty(painted, root, x, y, side);
+		else {
+			dirty = new ArrayList<Rectangle>();
+			dirty.add(new Rectangle(0, 0, width, height));
+		}
+
+		redrawnPixels = 0;
+		for (Rectangle r: dirty)
+			redrawnPixels += r.width * r.height;
+		if (redrawnPixels > MAX_DIRTY * width * height) {
+			dirty.clear();
+			dirty.add(new Rectangle(0, 0, width, height));
+			redrawnPixels = width * height;
+		}
+		redrawn = dirty.size();
+		if (!dirty.isEmpty())
+			draw(dirty, root, x, y, side, rgbPalette, rgbShades);
+		painted = root;
+		paintedX = x;
+		paintedY = y;
+		paintedSide = side;
+		g.drawImage(image, area.x, area.y, area.x + area.width, area.y + area.height, area.x, area.y, area.x + area.width, area.y + area.height, null);
+	}
+
+	/**
+	 * Draws a QuadNode into parts of the image, a band at a time in parallel
+	 * @param areas the parts of the image to draw, which must lie inside it
+	 * @param root
+	 * @param x
+	 * @param y
+	 * @param side
+	 * @param palette
+	 * @param shades
+	 */
+	void draw(List<Rectangle> areas, QuadNode root, double x, double y, double side, int[] palette, int[] shades) {
+		if (!Arrays.equals(palette, tilePalette) || !Arrays.equals(shades, tileShades)) {
+			tiles.clear();
+			tilePalette = palette;
+			tileShades = shades;
+		}
+		int tileLevel = tileLevel(side);
+		Rectangle area = new Rectangle(areas.get(0));
+		for (Rectangle r: areas)
+			area.add(r);
+		int bands = Math.min(area.height, THREADS * BANDS_PER_THREAD);
+		ArrayList<Callable<Void>> jobs = new ArrayList<Callable<Void>>();
+		for (int b = 0; b < bands; b++) {
+			Rectangle band = new Rectangle(area.x, area.y + area.height * b / bands, area.width, area.height * (b + 1) / bands - area.height * b / bands);
+			jobs.add(() -> {
+				for (Rectangle r: areas) { // Areas overlapping within a band are drawn one after another, so each ends up the same as if it were drawn alone
+					Rectangle part = r.intersection(band);
+					if (part.isEmpty())
+						continue;
+					Canvas c = new Canvas(pixels, width, part);
+					fill(c, part.x, part.y, part.width, part.height, palette[0]);
+					drawNode(c, root, x, y, side, palette, shades, tileLevel);
+				}
+				return null;
+			});
+		}
+		try {
+			for (Future<Void> f: pool.invokeAll(jobs))
+				f.get();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Finds the parts of the image that change when one root is drawn in place of another, merged into runs of blocks along each row
+	 * @param before the root drawn last
+	 * @param after
+	 * @param x
+	 * @param y
+	 * @param side
+	 * @return ArrayList<Rectangle>, lying inside the image
+	 */
+	ArrayList<Rectangle> dirty(QuadNode before, QuadNode after, double x, double y, double side) {
+		while (before.level < after.level) // The grid grew, so the old root is the center of one as big as the new one
+			before = before.expand();
+		while (after.level < before.level)
+			after = after.expand();
+		ArrayList<Rectangle> changed = new ArrayList<Rectangle>();
+		diff(before, after, x, y, side, new Rectangle(0, 0, width, height), changed);
+
+		int columns = (width + BLOCK - 1) / BLOCK, rows = (height + BLOCK - 1) / BLOCK;
+		boolean[] blocks = new boolean[columns * rows];
+		for (Rectangle r: changed)
+			for (int row = r.y / BLOCK; row <= (r.y + r.height - 1) / BLOCK; row++)
+				for (int column = r.x / BLOCK; column <= (r.x + r.width - 1) / BLOCK; column++)
+					blocks[row * columns + column] = true;
+
+		ArrayList<Rectangle> dirty = new ArrayList<Rectangle>();
+		Rectangle image = new Rectangle(0, 0, width, height);
+		for (int row = 0; row < rows; row++)
+			for (int column = 0; column < columns; column++) {
+				if (!blocks[row * columns + column])
+					continue;
+				int start = column;
+				while (column < columns && blocks[row * columns + column])
+					column++;
+				dirty.add(image.intersection(new Rectangle(start * BLOCK, row * BLOCK, (column - start) * BLOCK, BLOCK)));
+			}
+		return dirty;
+	}
+
+	/**
+	 * Recursively finds where two QuadNodes of the same level centered at (x, y) differ, placing and culling them the same way as drawNode
+	 * @param a
+	 * @param b
+	 * @param x
+	 * @param y
+	 * @param side
+	 * @param bounds
+	 * @param dirty where the areas that differ are added
+	 */
+	private static void diff(QuadNode a, QuadNode b, double x, double y, double side, Rectangle bounds, ArrayList<Rectangle> dirty) {
+		if (a == b) // Canonical, so everything below is the same too
+			return;
+		if (b.level == 0) { // (x, y) is the cell's upper left corner
+			int left = (int) Math.floor(x), top = (int) Math.floor(y);
+			mark(bounds, left, top, Math.max(left + 1, (int) Math.floor(x + side)), Math.max(top + 1, (int) Math.floor(y + side)), dirty);
+			return;
+		}
+		double half = Math.scalb(side, b.level - 1);
+		if (x + half <= bounds.x || y + half <= bounds.y || x - half >= bounds.x + bounds.width || y - half >= bounds.y + bounds.height)
+			return;
+		if (half <= 0.5 || 2 * half <= DIRTY_PIXELS) {
+			mark(bounds, (int) Math.floor(x - half), (int) Math.floor(y - half), (int) Math.floor(x + half), (int) Math.floor(y + half), dirty);
+			return;
+		}
+		if (b.level == 1) {
+			diff(a.nw, b.nw, x - side, y - side, side, bounds, dirty);
+			diff(a.ne, b.ne, x, y - side, side, bounds, dirty);
+			diff(a.sw, b.sw, x - side, y, side, bounds, dirty);
+			diff(a.se, b.se, x, y, side, bounds, dirty);
+		} else {
+			double shift = half / 2;
+			diff(a.nw, b.nw, x - shift, y - shift, side, bounds, dirty);
+			diff(a.ne, b.ne, x + shift, y - shift, side, bounds, dirty);
+			diff(a.sw, b.sw, x - shift, y + shift, side, bounds, dirty);
+			diff(a.se, b.se, x + shift, y + shift, side, bounds, dirty);
+		}
+	}
+
+	/**
+	 * Adds the part of an area that lies inside the bounds, grown by a pixel on each side. Cells inside are at least a pixel wide, and tiles can place them a pixel
+	 * up or to the left, so they can reach past the area's edges by that much.
+	 * @param bounds
+	 * @param left
+	 * @param top
+	 * @param right
+	 * @param bottom
+	 * @param dirty
+	 */
+	private static void mark(Rectangle bounds, int left, int top, int right, int bottom, ArrayList<Rectangle> dirty) {
+		Rectangle r = bounds.intersection(new Rectangle(left - 1, top - 1, right - left + 2, bottom - top + 2));
+		if (!r.isEmpty())
+			dirty.add(r);
+	}
+
+	/**
+	 * Chooses the level of the QuadNodes drawn as tiles
+	 * @param side
+	 * @return the level, or -1 if cells are too big for tiles to help
+	 */
+	private int tileLevel(double side) {
+		if (tiles.getCapacity() == 0 || Math.scalb(side, MIN_TILE_LEVEL) > MAX_TILE_PIXELS)
+			return -1;
+		int level = MIN_TILE_LEVEL;
+		while (Math.scalb(side, level) < TILE_PIXELS)
+			level++;
+		return level;
+	}
+
+	/**
+	 * Recursively draws a QuadNode centered at (x, y) onto a canvas
+	 * @param c
+	 * @param q
+	 * @param x
+	 * @param y
+	 * @param side
+	 * @param palette
+	 * @param shades
+	 * @param tileLevel the level of the nodes drawn as tiles, or -1 for none
+	 */
+	private void drawNode(Canvas c, QuadNode q, double x, double y, double side, int[] palette, int[] shades, int tileLevel) {
+		if (q.state == 0)
+			return;
+		if (q.level == 0) { // (x, y) is the cell's upper left corner
+			int left = (int) Math.floor(x), top = (int) Math.floor(y);
+			fill(c, left, top, Math.max(1, (int) Math.floor(x + side) - left), Math.max(1, (int) Math.floor(y + side) - top), palette[q.state < palette.length ? q.state : 1]);
+			return;
+		}
+		Rectangle clip = c.clip;
+		double half = Math.scalb(side, q.level - 1);
+		if (x + half <= clip.x || y + half <= clip.y || x - half >= clip.x + clip.width || y - half >= clip.y + clip.height)
+			return;
+		if (half <= 0.5) { // Covers a pixel or less
+			double density = q.population / Math.scalb(1.0, 2 * q.level);
+			fill(c, (int) Math.floor(x - half), (int) Math.floor(y - half), 1, 1, shades[(int) Math.min(255, Math.round(density * 255))]);
+			return;
+		}
+		if (q.level == tileLevel) {
+			drawTile(c, q, x, y, side, palette, shades);
+			return;
+		}
+		if (q.level == 1) {
+			drawNode(c, q.nw, x - side, y - side, side, palette, shades, tileLevel);
+			drawNode(c, q.ne, x, y - side, side, palette, shades, tileLevel);
+			drawNode(c, q.sw, x - side, y, side, palette, shades, tileLevel);
+			drawNode(c, q.se, x, y, side, palette, shades, tileLevel);
+		} else {
+			double shift = half / 2;
+			drawNode(c, q.nw, x - shift, y - shift, side, palette, shades, tileLevel);
+			drawNode(c, q.ne, x + shift, y - shift, side, palette, shades, tileLevel);
+			drawNode(c, q.sw, x - shift, y + shift, side, palette, shades, tileLevel);
+			drawNode(c, q.se, x + shift, y + shift, side, palette, shades, tileLevel);
+		}
+	}
+
+	/**
+	 * Copies the tile of a QuadNode centered at (x, y) onto a canvas, drawing and caching it first if it isn't cached
+	 * @param c
+	 * @param q
+	 * @param x
+	 * @param y
+	 * @param side
+	 * @param palette
+	 * @param shades
+	 */
+	private void drawTile(Canvas c, QuadNode q, double x, double y, double side, int[] palette, int[] shades) {
+		double half = Math.scalb(side, q.level - 1);
+		int left = (int) Math.floor(x - half), top = (int) Math.floor(y - half);
+		int w = (int) Math.floor(x + half) - left, h = (int) Math.floor(y + half) - top;
+		int[] tile = tiles.get(q, side, w, h);
+		if (tile == null) {
+			tile = new int[w * h];
+			Arrays.fill(tile, palette[0]);
+			drawNode(new Canvas(tile, w, new Rectangle(0, 0, w, h)), q, half, half, side, palette, shades, -1);
+			tiles.put(q, side, w, h, tile);
+		}
+
+		Rectangle clip = c.clip;
+		int x0 = Math.max(left, clip.x), x1 = Math.min(left + w, clip.x + clip.width);
+		int y0 = Math.max(top, clip.y), y1 = Math.min(top + h, clip.y + clip.height);
+		for (int row = y0; row < y1 && x0 < x1; row++)
+			System.arraycopy(tile, (row - top) * w + x0 - left, c.pixels, row * c.width + x0, x1 - x0);
+	}
+
+	/**
+	 * Fills the part of a rectangle that lies in a canvas's clip
+	 * @param c
+	 * @param left
+	 * @param top
+	 * @param w
+	 * @param h
+	 * @param rgb
+	 */
+	private static void fill(Canvas c, int left, int top, int w, int h, int rgb) {
+		Rectangle clip = c.clip;
+		int x0 = Math.max(left, clip.x), x1 = Math.min(left + w, clip.x + clip.width);
+		int y0 = Math.max(top, clip.y), y1 = Math.min(top + h, clip.y + clip.height);
+		for (int row = y0; row < y1; row++)
+			Arrays.fill(c.pixels, row * c.width + x0, row * c.width + Math.max(x0, x1), rgb);
+	}
+
+	/**
+	 * Describes how much drawing the last frame needed
+	 * @return e.g. "3 areas, 0.4% of the display"
+	 */
+	public String summary() {
+		return redrawn + " area" + (redrawn == 1 ? "" : "s") + String.format(", %.1f%% of the display", 100.0 * redrawnPixels / (width * (double) height));
+	}
+
+	/**
+	 * Gets the cache of tiles, to check how well it's doing or change its size
+	 * @return TileCache
+	 */
+	public TileCache getTiles() {
+		return tiles;
+	}
+
+	/**
+	 * Converts colors to RGB values
+	 * @param colors
+	 * @return int[]
+	 */
+	private static int[] rgb(Color[] colors) {
+		int[] rgb = new int[colors.length];
+		for (int i = 0; i < colors.length; i++)
+			rgb[i] = colors[i].getRGB() & 0xFFFFFF;
+		return rgb;
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * RecordingPlayer is a JFrame that lets the user scrub through the checkpoints of a recorded run, showing each one on the grid. Playing the grid from a checkpoint
+ * continues the run from there.
+ */
+
+package hashlife;
+
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.util.ArrayList;
+
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+public class RecordingPlayer extends JFrame implements ChangeListener {
+	private GridManager gm;
+	private ArrayList<NodeLog.Frame> frames;
+	private JSlider slider;
+	private JLabel generation = new JLabel();
+
+	/**
+	 * Constructor, initializes UI at the last checkpoint
+	 * @param gm the grid to show checkpoints on
+	 * @param frames the checkpoints of the recording
+	 */
+	public RecordingPlayer(GridManager gm, ArrayList<NodeLog.Frame> frames) {
+		super("Recording");
+		this.gm = gm;
+		this.frames = frames;
+
+		slider = new JSlider(JSlider.HORIZONTAL, 0, frames.size() - 1, frames.size() - 1);
+		slider.setPreferredSize(new Dimension(300, 40));
+		slider.addChangeListener(this);
+		generation.setText("Generation " + frames.get(frames.size() - 1).generation);
+
+		JPanel parent = new JPanel(new FlowLayout(FlowLayout.CENTER));
+		parent.add(slider);
+		parent.add(generation);
+		add(parent);
+
+		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		pack();
+		setVisible(true);
+	}
+
+	@Override
+	public void stateChanged(ChangeEvent e) {
+		NodeLog.Frame frame = frames.get(slider.getValue());
+		generation.setText("Generation " + frame.generation);
+		gm.showFrame(frame);
+	}
+}
@@ -34,7 +34,7 @@ public class RuleSetter extends JPanel implements ActionListener, ItemListener {
 	private HashSet<Integer> invalid = new HashSet<Integer>(); // The numbers that are invalid for the current neighborhood
 	private String neighborhood = "M"; // Default as Moore neighborhood
 	
-	private JTextField s, b;
+	private JTextField s, b, c;
 	private Image m_i, v_i, h_i;
 	private JRadioButton m, v, h;
 	private ButtonGroup group;
@@ -48,12 +48,13 @@ public class RuleSetter extends JPanel implements ActionListener, ItemListener {
 	public RuleSetter(GridManager gm) {
 		this.gm = gm;
 		s = new JTextField(10);
-		b = new JTextField(10);
+		b = new JTextField(4);
+		c = new JTextField(2);
 		
 		s.addKeyListener(new KeyAdapter() {
 			public void keyTyped(KeyEvent e) {
-				if (!Character.isDigit(e.getKeyChar()) || invalid.contains(e.getKeyChar() - 48) || s.getText().contains(e.getKeyChar() + ""))
-					e.consume(); // Limits characters the user can input: outlaws nondigits, invalid digits, and already-present digits
+				if (!isAllowed(s, e.getKeyChar()))
+					e.consume(); // Limits characters the user can input: outlaws invalid digits, already-present digits, and letters outside of Hensel notation
 				else 
 					makeUntitled(); // Changing the rule changes the combobox to blank
 			}
@@ -61,13 +62,22 @@ public class RuleSetter extends JPanel implements ActionListener, ItemListener {
 		
 		b.addKeyListener(new KeyAdapter() {
 			public void keyTyped(KeyEvent e) {			
-				if (!Character.isDigit(e.getKeyChar()) || invalid.contains(e.getKeyChar() - 48) || b.getText().contains(e.getKeyChar() + ""))
+				if (!isAllowed(b, e.getKeyChar()))
 					e.consume();
 				else
 					makeUntitled();
 			}
 		});
 		
+		c.addKeyListener(new KeyAdapter() {
+			public void keyTyped(KeyEvent e) {
+				if (!Character.isDigit(e.getKeyChar()) || c.getText().length() >= 3)
+					e.consume(); // The number of states can only be a number
+				else
+					makeUntitled();
+			}
+		});
+		
 		m_i = gm.getToolkit().getImage("assets/mn.png").getScaledInstance(50, 50, 0); // Neighborhood images
 		v_i = gm.getToolkit().getImage("assets/vn.png").getScaledInstance(50, 50, 0);
 		h_i = gm.getToolkit().getImage("assets/hn.png").getScaledInstance(50, 50, 0);
@@ -118,6 +128,7 @@ public class RuleSetter extends JPanel implements ActionListener, ItemListener {
 		
 		add(new JLabel("Survive: ")); add(s);
 		add(new JLabel("Born: ")); add(b);
+		add(new JLabel("States: ")); add(c);
 		
 		add(radioImage(m, m_i)); add(radioImage(v, v_i)); add(radioImage(h, h_i));
 		add(apply); add(save); add(delete);
@@ -151,10 +162,20 @@ public class RuleSetter extends JPanel implements ActionListener, ItemListener {
 	 * @param name
 	 */
 	private void setRule(String name) {
-		String[] parts = nameRuleMap.get(name).split("/");
+		if (nameRuleMap.get(name).startsWith("MAP")) { // MAP rules don't split into survive and birth, so the whole code goes in the first field
+			s.setText(nameRuleMap.get(name));
+			b.setText("");
+			c.setText("2");
+			m.setSelected(true);
+			neighborhood = "M";
+			return;
+		}
+		String[] parts = nameRuleMap.get(name).split("/", -1);
+		String last = parts[parts.length - 1];
 		s.setText(parts[0]);
-		b.setText(parts[1].substring(0, parts[1].length() - 1));
-		neighborhood = parts[1].substring(parts[1].length() - 1, parts[1].length());
+		b.setText(parts.length == 3 ? parts[1] : last.substring(0, last.length() - 1));
+		c.setText(parts.length == 3 ? last.substring(0, last.length() - 1) : "2"); // Generations rules have the number of states as a third part
+		neighborhood = last.substring(last.length() - 1, last.length());
 		
 		if (neighborhood.equals("M"))
 			m.setSelected(true);
@@ -171,7 +192,10 @@ public class RuleSetter extends JPanel implements ActionListener, ItemListener {
 			makeUntitled();
 			setInvalidChars(command);
 		} else if (command.equals("apply")) {
-			gm.setRule(s.getText() + "/" + b.getText() + neighborhood); // Applies rule to GridManager
+			if (Transitions.isValid(getCode()))
+				gm.setRule(getCode()); // Applies rule to GridManager
+			else
+				JOptionPane.showMessageDialog(this, "\'" + getCode() + "\' isn't a valid rule.", "Invalid rule", JOptionPane.WARNING_MESSAGE);
 		} else if (command.equals("save")) {
 			write();
 		} else if (command.equals("delete")) {
@@ -185,7 +209,11 @@ public class RuleSetter extends JPanel implements ActionListener, ItemListener {
 	 * Saves the current rule to a file, prompting the user at several points
 	 */
 	private void write() {
-		String code = s.getText() + "/" + b.getText() + neighborhood;
+		String code = getCode();
+		if (!Transitions.isValid(code)) {
+			JOptionPane.showMessageDialog(this, "\'" + code + "\' isn't a valid rule.", "Invalid rule", JOptionPane.WARNING_MESSAGE);
+			return;
+		}
 		String name = JOptionPane.showInputDialog(this, "What would you like to name this ruleset?", "Name ruleset", JOptionPane.QUESTION_MESSAGE);
 		if (!name.equals("")) {
 			try {
@@ -211,6 +239,30 @@ public class RuleSetter extends JPanel implements ActionListener, ItemListener {
 			JOptionPane.showConfirmDialog(this, "Remember to enter a name for the ruleset!", "Enter name", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
 	}
 	
+	/**
+	 * Builds the code for the rule in the text fields
+	 * @return the MAP code in the survive field, or survive/birth(/states if more than 2) followed by the neighborhood
+	 */
+	private String getCode() {
+		if (s.getText().startsWith("MAP"))
+			return s.getText();
+		if (!c.getText().isEmpty() && Integer.parseInt(c.getText()) > 2)
+			return s.getText() + "/" + b.getText() + "/" + Integer.parseInt(c.getText()) + neighborhood;
+		return s.getText() + "/" + b.getText() + neighborhood;
+	}
+	
+	/**
+	 * Determines whether a typed character may be added to a survive or birth field. Hensel letters and '-' are only allowed in the Moore neighborhood.
+	 * @param field
+	 * @param c
+	 * @return c is a valid digit not already in the field, or a Hensel letter or '-'
+	 */
+	private boolean isAllowed(JTextField field, char c) {
+		if (Character.isDigit(c))
+			return !invalid.contains(c - 48) && !field.getText().contains(c + "");
+		return neighborhood.equals("M") && (c == '-' || Transitions.HENSEL_LETTERS.indexOf(c) >= 0);
+	}
+	
 	/**
 	 * Deletes the current rule
 	 * @param name
@@ -244,6 +296,12 @@ public class RuleSetter extends JPanel implements ActionListener, ItemListener {
 			invalid.add(7); invalid.add(8);
 		}
 		
+		if (sText.startsWith("MAP") && !command.equals("M")) // MAP rules only use the Moore neighborhood
+			sText = "";
+		if (!command.equals("M")) { // Hensel letters only apply to the Moore neighborhood
+			sText = sText.replaceAll("[^0-9]", "");
+			bText = bText.replaceAll("[^0-9]", "");
+		}
 		for (Integer i: invalid) {
 			sText = sText.replace(i + "", "");
 			bText = bText.replace(i + "", "");
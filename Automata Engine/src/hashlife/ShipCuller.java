@@ -0,0 +1,191 @@
+/**
+ * ShipCuller removes known spaceships that have flown far away from the rest of the grid, so that long runs of guns and puffers don't keep growing the root just to
+ * follow their output. The ships are found with a PatternSearch over every phase of each ship, which the engine computes by evolving the ship under the current rule,
+ * so ships that don't fly under the rule are never recognized. Only isolated ships count, and the main pattern is whatever is left once the ships are taken out.
+ *
+ * A ship is only removed once it is flying away from the main pattern, worked out from how its phase moves over a period under the transform it was found with, so
+ * ships heading back towards the pattern, like incoming salvos, are left to arrive.
+ */
+
+package hashlife;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class ShipCuller {
+	static final String[] NAMES = {"glider", "lightweight spaceship", "middleweight spaceship", "heavyweight spaceship"};
+	private static final String[][] SHIPS = { // Rows from the north, with O for live cells
+		{".O.", "..O", "OOO"},
+		{".O..O", "O....", "O...O", "OOOO."},
+		{"...O..", ".O...O", "O.....", "O....O", "OOOOO."},
+		{"...OO..", ".O....O", "O......", "O.....O", "OOOOOO."}
+	};
+	private static final int PERIOD = 4; // Every ship above repeats itself after this many generations
+
+	private final int distance; // How far ships must be from the main pattern to be removed
+	private final long[] culled = new long[NAMES.length]; // Number of each ship removed so far
+	private String code; // Rule the search was built for
+	private PatternSearch search;
+	private ArrayList<Patch> phases = new ArrayList<Patch>(); // Every phase of every ship that flies under the rule, in the order given to the search
+	private ArrayList<Integer> kinds = new ArrayList<Integer>(); // Index in NAMES of each phase's ship
+	private ArrayList<int[]> moves = new ArrayList<int[]>(); // How far each phase's ship moves east and north over a period, before transforming
+
+	/**
+	 * Constructor
+	 * @param distance how far ships must be from the main pattern to be removed
+	 */
+	public ShipCuller(int distance) {
+		this.distance = distance;
+	}
+
+	/**
+	 * Removes the ships far from the main pattern that are flying away from it
+	 * @param root a QuadNode centered on the origin
+	 * @return the root without those ships
+	 */
+	public QuadNode cull(QuadNode root) {
+		if (!NodeManager.t.getCode().equals(code))
+			prepare();
+		if (phases.isEmpty() || root.population == 0)
+			return root;
+
+		ArrayList<int[]> ships = new ArrayList<int[]>(); // {minX, minY, maxX, maxY, kind, dx, dy}
+		HashSet<String> seen = new HashSet<String>(); // Phases that look alike find the same ship more than once
+		for (int[] m: search.find(root)) {
+			Patch phase = phases.get(m[3]);
+			boolean turned = (m[2] & QuadNode.TRANSPOSE) != 0;
+			int width = turned ? phase.height : phase.width, height = turned ? phase.width : phase.height;
+			int[] move = moves.get(m[3]);
+			int dx = (m[2] & QuadNode.FLIP_X) != 0 ? -move[0] : move[0], dy = (m[2] & QuadNode.FLIP_Y) != 0 ? -move[1] : move[1];
+			if (turned) {
+				int d = dx;
+				dx = dy;
+				dy = d;
+			}
+			if (seen.add(m[0] + " " + m[1] + " " + width + " " + height))
+				ships.add(new int[] {m[0], m[1], m[0] + width - 1, m[1] + height - 1, kinds.get(m[3]), dx, dy});
+		}
+		if (ships.isEmpty())
+			return root;
+
+		QuadNode main = root; // Found ships are isolated, so clearing their rectangles leaves everything else
+		for (int[] s: ships)
+			main = main.fillRect(s[0], s[1], s[2], s[3], false);
+		int[] box = main.bounds();
+		if (box.length == 0) // Nothing but ships, so there's nothing for them to be far from
+			return root;
+		int corner = -(1 << (main.level - 1));
+		int minX = box[0] + corner, minY = box[1] + corner, maxX = box[2] + corner, maxY = box[3] + corner;
+
+		for (int[] s: ships) {
+			boolean leaving = (long) s[0] - maxX > distance && s[5] > 0 || (long) minX - s[2] > distance && s[5] < 0 || // Far to the east or west, and flying further out
+					(long) s[1] - maxY > distance && s[6] > 0 || (long) minY - s[3] > distance && s[6] < 0;
+			if (leaving) {
+				root = root.fillRect(s[0], s[1], s[2], s[3], false);
+				culled[s[4]]++;
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Computes the phases of the ships under the current rule and builds the search for them
+	 */
+	private void prepare() {
+		code = NodeManager.t.getCode();
+		phases = new ArrayList<Patch>();
+		kinds = new ArrayList<Integer>();
+		moves = new ArrayList<int[]>();
+		for (int k = 0; k < SHIPS.length; k++) {
+			ArrayList<int[]> cells = new ArrayList<int[]>();
+			for (int row = 0; row < SHIPS[k].length; row++)
+				for (int col = 0; col < SHIPS[k][row].length(); col++)
+					if (SHIPS[k][row].charAt(col) == 'O')
+						cells.add(new int[] {col, -row});
+
+			ArrayList<int[]> shapes = new ArrayList<int[]>(); // Each phase's cells, measured from its SW corner
+			QuadNode q = centered(cells, 6);
+			int[] start = q.bounds();
+			for (int g = 0; g <= PERIOD; g++) {
+				shapes.add(normalize(q));
+				if (g < PERIOD)
+					q = q.expand().evolve();
+			}
+			if (!Arrays.equals(shapes.get(0), shapes.get(PERIOD))) // Doesn't fly under this rule
+				continue;
+			int[] end = q.bounds();
+			int[] move = {end[0] - start[0], end[1] - start[1]}; // The same for every phase, since the ship is back in its first phase
+			for (int g = 0; g < PERIOD; g++) {
+				int[] shape = shapes.get(g);
+				if (shape.length == 0)
+					continue;
+				phases.add(Patch.fromCells(shape, shape.length / 2));
+				kinds.add(k);
+				moves.add(move);
+			}
+		}
+		search = new PatternSearch(phases.toArray(new Patch[0]), true);
+	}
+
+	/**
+	 * Builds a QuadNode centered on the origin from a list of cells
+	 * @param cells
+	 * @param level
+	 * @return QuadNode
+	 */
+	private static QuadNode centered(ArrayList<int[]> cells, int level) {
+		QuadNode q = QuadNode.newEmpty(level);
+		for (int[] c: cells)
+			q = q.fillRect(c[0], c[1], c[0], c[1], true);
+		return q;
+	}
+
+	/**
+	 * Gets the live cells of a QuadNode measured from the SW corner of their bounding box, in a fixed order
+	 * @param q a QuadNode centered on the origin
+	 * @return the coordinates, as x0, y0, x1, y1, ...
+	 */
+	private static int[] normalize(QuadNode q) {
+		int half = 1 << (q.level - 1);
+		int[] box = q.bounds();
+		if (box.length == 0)
+			return new int[0];
+		long[] keys = new long[(int) q.population];
+		int n = 0;
+		CellIterator it = new CellIterator(q, -half, -half, half - 1, half - 1);
+		while (it.next())
+			keys[n++] = (long) (it.getY() + half - box[1]) << 32 | (it.getX() + half - box[0]);
+		Arrays.sort(keys); // The order cells are visited in depends on where they fall in the QuadNode
+		int[] result = new int[2 * n];
+		for (int i = 0; i < n; i++) {
+			result[2 * i] = (int) keys[i];
+			result[2 * i + 1] = (int) (keys[i] >>> 32);
+		}
+		return result;
+	}
+
+	/**
+	 * Getter for culled
+	 * @return the number of each ship removed so far, in the order of NAMES
+	 */
+	public long[] getCulled() {
+		return culled.clone();
+	}
+
+	/**
+	 * Describes how many ships have been removed
+	 * @return e.g. "12 gliders, 1 lightweight spaceship"
+	 */
+	public String summary() {
+		StringBuilder s = new StringBuilder();
+		for (int k = 0; k < NAMES.length; k++) {
+			if (culled[k] == 0)
+				continue;
+			if (s.length() > 0)
+				s.append(", ");
+			s.append(culled[k] + " " + NAMES[k] + (culled[k] == 1 ? "" : "s"));
+		}
+		return s.length() == 0 ? "no ships" : s.toString();
+	}
+}
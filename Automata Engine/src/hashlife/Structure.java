@@ -7,11 +7,10 @@ package hashlife;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import javax.swing.JOptionPane;
 
 public class Structure {
@@ -20,6 +19,7 @@ public class Structure {
 	private int minX, minY = Integer.MAX_VALUE;
 	private int maxX, maxY = Integer.MIN_VALUE;
 	private int width, height;
+	private Patch[] patches = new Patch[8]; // The cells compiled into a QuadNode under each transform, once they've been placed that way
 	private ArrayList<String> intendedRules = new ArrayList<String>(); // UNIMPLEMENTED: Meant for the user to be able to specify which rules a Structure should be used with
 	
 	/**
@@ -61,6 +61,39 @@ public class Structure {
 	public void add(int[] gridCoords) {
 		updateMinMax(gridCoords[0], gridCoords[1]); // Check whether the coordinates are outside the current bounds of the structure
 		cells.add(gridCoords[0] + " " + gridCoords[1]);
+		patches = new Patch[8];
+	}
+
+	/**
+	 * Gets the Structure's cells compiled into a Patch, compiling them the first time
+	 * @return Patch, or null if the Structure has no cells
+	 */
+	public Patch getPatch() {
+		return getPatch(0);
+	}
+
+	/**
+	 * Gets the Structure's cells compiled into a Patch and transformed, keeping the SW corner of its bounding box in place
+	 * @param t a combination of QuadNode.FLIP_X, FLIP_Y and TRANSPOSE
+	 * @return Patch, or null if the Structure has no cells
+	 */
+	public Patch getPatch(int t) {
+		if (patches[t] == null) {
+			if (t != 0) {
+				Patch original = getPatch(0);
+				patches[t] = original == null ? null : original.transform(t);
+			} else {
+				int[] coords = new int[2 * cells.size()];
+				int n = 0;
+				for (String c: cells) {
+					int[] xy = stringToCoords(c);
+					coords[n++] = xy[0];
+					coords[n++] = xy[1];
+				}
+				patches[0] = Patch.fromCells(coords, n / 2);
+			}
+		}
+		return patches[t];
 	}
 	
 	/**
@@ -135,14 +168,19 @@ public class Structure {
 	 * @return Structure
 	 */
 	public static Structure read(String filePath) {
-		try {			
-			String content = new String(Files.readAllBytes(Paths.get(filePath)));
-			String[] parts = content.split("\\|");
-			Structure newStruct = new Structure(parts[0], parts[1]);
-			String[] cells = parts[2].split("\n");
-			for (String c: cells)
-				newStruct.add(Structure.stringToCoords(c));
-			return newStruct;
+		try (PatternIO.ByteReader in = new PatternIO.ByteReader(filePath)) {
+			Structure newStruct = new Structure(in.until('|'), in.until('|'));
+			while (true) {
+				long x = in.number();
+				if (x == Long.MIN_VALUE) {
+					in.end();
+					return newStruct;
+				}
+				long y = in.number();
+				if (y == Long.MIN_VALUE)
+					throw in.malformed();
+				newStruct.add(new int[] {(int) x, (int) y});
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -158,13 +196,13 @@ public class Structure {
 			if (newFile.exists())
 				if (JOptionPane.showConfirmDialog(null, "A Structure called \'" + name + "\' already exists. Would you like to overwrite it?", "Overwrite?", JOptionPane.YES_NO_OPTION) == JOptionPane.NO_OPTION)
 					return;
-			FileWriter writer = new FileWriter(newFile);
-			writer.write(name + "|" + desc + "|");
-			for (String c: cells) {
-				String[] split = c.split(" ");
-				writer.write(split[0] + " " + split[1] + "\n");
+			try (BufferedWriter writer = new BufferedWriter(new FileWriter(newFile))) {
+				writer.write(name + "|" + desc + "|");
+				for (String c: cells) {
+					writer.write(c);
+					writer.write('\n');
+				}
 			}
-			writer.close();
 			JOptionPane.showMessageDialog(null, "Save successful!", "Success", JOptionPane.INFORMATION_MESSAGE, null);
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -21,7 +21,7 @@ public class StructureAdder extends Tool {
 	 * Place the selected structure at the click coordinates
 	 */
 	public void performPrimaryAction() {
-		gm.addStructure(gridCoords[0], gridCoords[1], gm.getSelectedStruct().getCells());		
+		gm.stampStructure(gridCoords[0], gridCoords[1], gm.getSelectedStruct());		
 	}
 
 	@Override
@@ -137,10 +137,9 @@ public class StructureCreator extends JFrame implements ActionListener, WindowLi
 	private void saveStructure() {
 		struct.setName(name.getText());
 		struct.setDesc(desc.getText());
-		for (int x = gm.nm.minX; x < gm.nm.maxX + 1; x++)
-			for (int y = gm.nm.minY; y < gm.nm.maxY + 1; y++)
-				if (gm.nm.getCell(x, y))
-					struct.add(new int[] {x, y});
+		CellIterator it = gm.nm.cells();
+		while (it.next())
+			struct.add(new int[] {it.getX(), it.getY()});
 		struct.write();
 	}
 
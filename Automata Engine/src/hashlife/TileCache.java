@@ -0,0 +1,153 @@
+/**
+ * TileCache keeps the pixels of QuadNodes that have already been drawn, so that a node showing up again, in another place or the next frame, can be copied instead of
+ * drawn from scratch. Since QuadNodes are canonical, every copy of a region is the same node, so repeated patterns like pulsar fields, agar and still life ash are
+ * drawn once per zoom level.
+ *
+ * A tile is found by its node, the side of a cell on the display, and its size in pixels, which can differ by one depending on where the node falls on the display.
+ * The least recently used tiles are thrown away once the tiles take up more memory than the cap.
+ */
+
+package hashlife;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class TileCache {
+	private static final long DEFAULT_CAPACITY = 32L << 20; // In bytes, which can be changed with -Dhashlife.tileCache=<megabytes>
+
+	private final LinkedHashMap<Key, int[]> tiles = new LinkedHashMap<Key, int[]>(256, 0.75f, true); // Ordered from least to most recently used
+	private long capacity, bytes;
+	private long hits, misses, evictions;
+
+	/**
+	 * Identifies a tile
+	 */
+	private static class Key {
+		final QuadNode node;
+		final double side;
+		final int width, height;
+
+		Key(QuadNode node, double side, int width, int height) {
+			this.node = node;
+			this.side = side;
+			this.width = width;
+			this.height = height;
+		}
+
+		public int hashCode() {
+			return (System.identityHashCode(node) * 31 + Double.hashCode(side)) * 31 + width * 7 + height;
+		}
+
+		public boolean equals(Object o) {
+			Key k = (Key) o;
+			return node == k.node && side == k.side && width == k.width && height == k.height;
+		}
+	}
+
+	public TileCache() {
+		long capacity = DEFAULT_CAPACITY;
+		try {
+			String mb = System.getProperty("hashlife.tileCache");
+			if (mb != null)
+				capacity = Long.parseLong(mb) << 20;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Gets the pixels of a tile, row by row from the top
+	 * @param q
+	 * @param side
+	 * @param w
+	 * @param h
+	 * @return int[], or null if the tile isn't cached
+	 */
+	public synchronized int[] get(QuadNode q, double side, int w, int h) {
+		int[] tile = tiles.get(new Key(q, side, w, h));
+		if (tile == null)
+			misses++;
+		else
+			hits++;
+		return tile;
+	}
+
+	/**
+	 * Caches a tile, throwing away the least recently used tiles until it fits
+	 * @param q
+	 * @param side
+	 * @param w
+	 * @param h
+	 * @param tile
+	 */
+	public synchronized void put(QuadNode q, double side, int w, int h, int[] tile) {
+		long size = 4L * tile.length;
+		if (size > capacity)
+			return;
+		int[] old = tiles.put(new Key(q, side, w, h), tile);
+		bytes += size - (old == null ? 0 : 4L * old.length);
+		evict();
+	}
+
+	/**
+	 * Throws away the least recently used tiles until the rest fit under the cap
+	 */
+	private void evict() {
+		Iterator<int[]> it = tiles.values().iterator();
+		while (bytes > capacity && it.hasNext()) {
+			bytes -= 4L * it.next().length;
+			it.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Throws away every tile, such as when the colors change
+	 */
+	public synchronized void clear() {
+		tiles.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Sets the most memory the tiles can take up
+	 * @param capacity in bytes
+	 */
+	public synchronized void setCapacity(long capacity) {
+		this.capacity = Math.max(0, capacity);
+		evict();
+	}
+
+	/**
+	 * Gets the most memory the tiles can take up
+	 * @return long, in bytes
+	 */
+	public synchronized long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the fraction of lookups that found a tile
+	 * @return double
+	 */
+	public synchronized double getHitRate() {
+		return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+	}
+
+	/**
+	 * Starts counting hits, misses and evictions over
+	 */
+	public synchronized void resetStats() {
+		hits = misses = evictions = 0;
+	}
+
+	/**
+	 * Describes how well the cache is doing
+	 * @return e.g. "1,204 tiles in 12.5 of 32.0 MB, 97.1% hits (50,311 of 51,815), 0 evicted"
+	 */
+	public synchronized String summary() {
+		return String.format("%,d tiles in %.1f of %.1f MB, %.1f%% hits (%,d of %,d), %,d evicted", tiles.size(), bytes / 1048576.0, capacity / 1048576.0,
+				100 * getHitRate(), hits, hits + misses, evictions);
+	}
+}
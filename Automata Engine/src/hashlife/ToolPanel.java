@@ -22,6 +22,7 @@ import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 
 public class ToolPanel extends JPanel implements ActionListener, ItemListener {
@@ -30,6 +31,8 @@ public class ToolPanel extends JPanel implements ActionListener, ItemListener {
 	private JButton mover, zoomer,painter, selector, structures;
 	private JPanel info;
 	private JComboBox<String> actionList;
+	private JComboBox<String> stampList; // How the Structure Adder stamps structures
+	private JComboBox<String> orientList; // How the Structure Adder orients structures
 	private JLabel name, desc, prim, seco;
 	private ImageIcon m_i, z_i, p_i, s_i, st_i;
 	private Image lc, rc;
@@ -159,11 +162,26 @@ public class ToolPanel extends JPanel implements ActionListener, ItemListener {
 		desc.setFont(normal);
 		prim.setFont(normal); seco.setFont(normal);
 
-		String[] selectActs = {"Fill", "Delete", "Randomize", "Invert"};
+		String[] selectActs = {"Fill", "Delete", "Randomize", "Invert", "Tile with Structure"};
 		actionList = new JComboBox<String>(selectActs);
+		for (String transform: GridManager.transforms)
+			actionList.addItem(transform);
 		actionList.setSelectedIndex(0);
 		actionList.addItemListener(this);
 
+		String[] stampModes = {"Place", "Toggle", "Erase"};
+		stampList = new JComboBox<String>(stampModes);
+		stampList.setSelectedIndex(0);
+		stampList.addItemListener(this);
+		gm.setStampMode("Place");
+
+		orientList = new JComboBox<String>(new String[] {"Original"});
+		for (String transform: GridManager.transforms)
+			orientList.addItem(transform);
+		orientList.setSelectedIndex(0);
+		orientList.addItemListener(this);
+		gm.setStampOrientation("Original");
+
 		info.removeAll();
 		info.add(new JLabel("Current tool: "));
 		info.add(name);
@@ -172,6 +190,10 @@ public class ToolPanel extends JPanel implements ActionListener, ItemListener {
 		info.add(acts);
 		if (t instanceof Selector)
 			info.add(actionList);
+		if (t instanceof StructureAdder) {
+			info.add(stampList);
+			info.add(orientList);
+		}
 		info.repaint();
 		info.revalidate();
 	}
@@ -179,8 +201,10 @@ public class ToolPanel extends JPanel implements ActionListener, ItemListener {
 	private void compactUpdate() {
 		Tool t = gm.getTool();		
 
-		String[] selectActs = {"Fill", "Delete", "Randomize", "Invert"};
+		String[] selectActs = {"Fill", "Delete", "Randomize", "Invert", "Tile with Structure"};
 		actionList = new JComboBox<String>(selectActs);
+		for (String transform: GridManager.transforms)
+			actionList.addItem(transform);
 		actionList.setSelectedIndex(0);
 		actionList.addItemListener(this);
 
@@ -237,7 +261,33 @@ public class ToolPanel extends JPanel implements ActionListener, ItemListener {
 
 	@Override
 	public void itemStateChanged(ItemEvent e) {
+		if (e.getSource() == stampList) {
+			gm.setStampMode((String) stampList.getSelectedItem());
+			return;
+		}
+		if (e.getSource() == orientList) {
+			gm.setStampOrientation((String) orientList.getSelectedItem());
+			gm.repaint();
+			return;
+		}
 		selectOption = (String) actionList.getSelectedItem();
 		gm.setSelectAction(selectOption);		
+		if (e.getStateChange() == ItemEvent.SELECTED && selectOption.equals("Randomize")) { // Asks how many cells should be alive
+			String density = JOptionPane.showInputDialog(this, "Chance that each cell is alive (0 to 1):", gm.getDensity());
+			try {
+				if (density != null)
+					gm.setDensity(Double.parseDouble(density));
+			} catch (NumberFormatException ex) {}
+		}
+		if (e.getStateChange() == ItemEvent.SELECTED && selectOption.equals("Tile with Structure")) { // Asks how far apart the copies should be
+			int[] period = gm.getTilePeriod();
+			String choice = JOptionPane.showInputDialog(this, "Period of the tiling (dx, dy):", period[0] + ", " + period[1]);
+			try {
+				if (choice != null) {
+					String[] split = choice.split(",");
+					gm.setTilePeriod(Integer.parseInt(split[0].trim()), Integer.parseInt(split[1].trim()));
+				}
+			} catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {}
+		}
 	}
 }
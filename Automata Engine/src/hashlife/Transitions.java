@@ -6,8 +6,14 @@
  * Codes for transitions are specified as follows:
  		* Numbers to the left of the slash indicate how many live neighbor cells a cell needs to survive
  		* Numbers to the right of the slash indicate how many live neighbor cells a dead cell needs to become live
+ 		* An optional third number (e.g. /2/3M) gives the number of states for Generations rules. Live cells that don't survive pass through the extra states as they die, and only live cells count as neighbors
  		* The last character indicates the type of neighborhood. M is Moore (all 8 adjacent squares), V is Von Neumann (all 4 orthogonal squares), H is Hexagonal (M without NE and SW corners).
+ 		* In the Moore neighborhood, a number may be followed by Hensel letters (e.g. 2-a3/3iM) to restrict it to the listed arrangements of neighbors, or to all but them with a '-'
+ 		* A code of the form MAP followed by 512 bits in base64 gives the next state for every 3x3 neighborhood directly
  * Note that the accepted numbers in the first two parts depend on the last part.
+ * 
+ * Every rule is compiled into a table of next states for all 512 3x3 neighborhoods, which is then expanded into the 4x4 -> 2x2 table that QuadNode uses as its base case,
+ * so that all rules cost the same to evolve.
  */
 
 package hashlife;
@@ -16,15 +22,48 @@ import java.io.File;
 import java.io.FileWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Base64;
 import java.util.HashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Transitions {
 	int neighborhood; // 0 indicates Moore, 1 indicates Von, 2 indicates Hex
+	int states = 2; // Number of cell states, including dead and alive
 	HashSet<Integer> survive = new HashSet<Integer>();
 	HashSet<Integer> birth = new HashSet<Integer>();
+	boolean[] map = new boolean[512]; // The next state of the center cell for every 3x3 neighborhood, with NW as the highest bit and SE as the lowest
+	byte[] base = new byte[65536]; // The next states of the four center cells (NW, NE, SW, SE from highest bit) of every 4x4 block, rows read from the top
 	String code;
 	private String name;
 
+	static final String HENSEL_LETTERS = "cekainyqjrtwz";
+	static final String HENSEL = "([0-8](-?[" + HENSEL_LETTERS + "]+)?)*"; // A survive or birth part in Hensel notation
+	static final String STATES = "(/[0-9]+)?"; // The optional number of states of a Generations rule
+	static final int MOORE = 0x1EF, VON_NEUMANN = 0x0AA, HEXAGONAL = 0x1AB; // Masks of the neighbors of the center cell (0x010) for each neighborhood
+
+	private static final String[] henselOrder = {"", "ce", "ceaikn", "ceaiknjqry", "ceaiknjqrtwyz"}; // Letters for 0 through 4 neighbors. 5 through 8 use the letters of their complements
+	private static final int[][] henselShapes = { // One arrangement for each letter, with NW as the lowest bit and SE as the highest
+			{},
+			{0x001, 0x002},
+			{0x005, 0x00A, 0x003, 0x028, 0x021, 0x044},
+			{0x045, 0x02A, 0x00B, 0x007, 0x062, 0x00D, 0x00E, 0x046, 0x029, 0x061},
+			{0x145, 0x0AA, 0x00F, 0x02D, 0x063, 0x047, 0x06A, 0x066, 0x02B, 0x065, 0x069, 0x04E, 0x06C}};
+	private static final char[] hensel = new char[512]; // The Hensel letter of the arrangement of neighbors in each 3x3 neighborhood
+
+	static {
+		for (int n = 1; n < 8; n++) {
+			int shapes = Math.min(n, 8 - n);
+			for (int i = 0; i < henselOrder[shapes].length(); i++) {
+				int shape = n <= 4 ? henselShapes[shapes][i] : MOORE & ~henselShapes[shapes][i]; // Arrangements of more than 4 neighbors are the complements of those of fewer
+				for (int t = 0; t < 8; t++) {
+					hensel[transform(shape, t)] = henselOrder[shapes].charAt(i);
+					hensel[transform(shape, t) | 0x010] = henselOrder[shapes].charAt(i);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Default constructor, initializes Conway's Life
 	 */
@@ -34,6 +73,7 @@ public class Transitions {
 		survive.add(3);
 		birth.add(3);
 		code = "23/3M";
+		compile(parse("23", MOORE), parse("3", MOORE));
 	}
 
 	/**
@@ -41,21 +81,36 @@ public class Transitions {
 	 * @param code
 	 */
 	public Transitions(String code) {
-		clearQuadCache(); // Resets the next state results for all QuadNodes
-		String[] split = code.split("/");
-		if (code.matches("([0-8])*/([0-8])*M"))
+		this.code = code;
+		if (code.startsWith("MAP")) { // MAP rules give the table directly
+			byte[] bits = Base64.getDecoder().decode(code.substring(3));
+			for (int i = 0; i < 512; i++)
+				map[i] = (bits[i >> 3] >> (7 - (i & 7)) & 1) == 1;
+			compile();
+			return;
+		}
+
+		String[] split = code.split("/", -1);
+		if (code.matches(HENSEL + "/" + HENSEL + STATES + "M"))
 			neighborhood = 0;	
-		else if (code.matches("([0-4])*/([0-4])*V"))
+		else if (code.matches("([0-4])*/([0-4])*" + STATES + "V"))
 			neighborhood = 1;
-		else if (code.matches("([0-6])*/([0-6])*H"))
+		else if (code.matches("([0-6])*/([0-6])*" + STATES + "H"))
 			neighborhood = 2;
 
+		String last = split[split.length - 1].replaceAll("[MVH]$", "");
+		if (split.length == 3)
+			states = Math.max(2, Integer.parseInt(last));
+
 		for (int i = 0; i < split[0].length(); i++)
-			survive.add(split[0].charAt(i) - 48);
+			if (Character.isDigit(split[0].charAt(i)))
+				survive.add(split[0].charAt(i) - 48);
 		for (int i = 0; i < split[1].length(); i++)
 			if (Character.isDigit(split[1].charAt(i)))	
 				birth.add(split[1].charAt(i) - 48);
-		this.code = code;
+
+		int mask = neighborhood == 0 ? MOORE : neighborhood == 1 ? VON_NEUMANN : HEXAGONAL;
+		compile(parse(split[0], mask), parse(split.length == 3 ? split[1] : last, mask));
 	}
 
 	/**
@@ -85,9 +140,152 @@ public class Transitions {
 	}
 
 	/**
-	 * Clears cached next generation results from all QuadNodes
+	 * Determines whether a code describes a valid rule
+	 * @param code
+	 * @return code is a totalistic, Hensel, or MAP code whose letters are all allowed for their numbers
+	 */
+	public static boolean isValid(String code) {
+		if (code.startsWith("MAP")) {
+			try {
+				return Base64.getDecoder().decode(code.substring(3)).length == 64;
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
+		}
+		String[] split = code.split("/", -1);
+		if (split.length == 3 && !split[2].matches("0*([2-9]|[1-9][0-9]|1[0-9][0-9]|2[0-4][0-9]|25[0-6])[MVH]?")) // Between 2 and 256 states
+			return false;
+		if (code.matches("([0-4])*/([0-4])*" + STATES + "V") || code.matches("([0-6])*/([0-6])*" + STATES + "H"))
+			return true;
+		if (!code.matches(HENSEL + "/" + HENSEL + STATES + "M?"))
+			return false;
+		int n = 0;
+		for (char c: code.toCharArray()) // Every letter must name an arrangement of the number it follows
+			if (Character.isDigit(c))
+				n = c - 48;
+			else if (HENSEL_LETTERS.indexOf(c) >= 0 && henselOrder[Math.min(n, 8 - n)].indexOf(c) < 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Converts a rule from a pattern file into a code, accepting the B/S notation of RLE and macrocell files (e.g. B3/S23, B2/S/C3) as well as this program's codes
+	 * @param text
+	 * @return the code, or null if it isn't valid
+	 */
+	public static String fromNotation(String text) {
+		Matcher m = Pattern.compile("[Bb]([^/]*)/[Ss]([^/]*?)(/[Cc]?([0-9]+))?([MVH]?)").matcher(text.trim());
+		String code = m.matches() ? m.group(2) + "/" + m.group(1) + (m.group(4) == null ? "" : "/" + m.group(4)) + m.group(5) : text.trim();
+		return isValid(code) ? code : null;
+	}
+
+	/**
+	 * Converts a code into the B/S notation of RLE and macrocell files
+	 * @param code
+	 * @return e.g. B3/S23 for 23/3M, or the code itself for MAP codes
+	 */
+	public static String toNotation(String code) {
+		if (code.startsWith("MAP"))
+			return code;
+		String suffix = code.endsWith("V") || code.endsWith("H") ? code.substring(code.length() - 1) : "";
+		String[] split = code.replaceAll("[MVH]$", "").split("/", -1);
+		return "B" + split[1] + "/S" + split[0] + (split.length == 3 ? "/C" + split[2] : "") + suffix;
+	}
+
+	/**
+	 * Gets the next state of a cell
+	 * @param state the current state of the cell
+	 * @param live whether the 3x3 table says the cell is alive next generation
+	 * @return 1 if a dead cell is born or a live cell survives, otherwise the next dying state, wrapping around to dead
+	 */
+	int nextState(int state, boolean live) {
+		if (state == 0 || (state == 1 && live))
+			return live ? 1 : 0;
+		return (state + 1) % states;
+	}
+
+	/**
+	 * Parses the survive or birth part of a code into the 3x3 neighborhoods it accepts
+	 * @param part
+	 * @param mask the cells counted as neighbors
+	 * @return accepted[i] is whether neighborhood i is included, ignoring the center cell
+	 */
+	private static boolean[] parse(String part, int mask) {
+		boolean[] accepted = new boolean[512];
+		int i = 0;
+		while (i < part.length()) {
+			int n = part.charAt(i++) - 48;
+			boolean negate = i < part.length() && part.charAt(i) == '-';
+			if (negate)
+				i++;
+			String letters = "";
+			while (i < part.length() && Character.isLetter(part.charAt(i)))
+				letters += part.charAt(i++);
+
+			for (int m = 0; m < 512; m++) {
+				if (Integer.bitCount(m & mask) != n)
+					continue;
+				if (letters.isEmpty() || (letters.indexOf(hensel[m]) >= 0) != negate) // Without letters, every arrangement of n neighbors is accepted
+					accepted[m] = true;
+			}
+		}
+		return accepted;
+	}
+
+	/**
+	 * Fills the 3x3 table from the neighborhoods accepted for survival and birth, then expands it
+	 * @param survives
+	 * @param births
+	 */
+	private void compile(boolean[] survives, boolean[] births) {
+		for (int m = 0; m < 512; m++)
+			map[m] = (m & 0x010) != 0 ? survives[m] : births[m];
+		compile();
+	}
+
+	/**
+	 * Expands the 3x3 table into the 4x4 -> 2x2 table
+	 */
+	private void compile() {
+		for (int cells = 0; cells < 65536; cells++) {
+			int next = 0;
+			for (int r = 1; r <= 2; r++)
+				for (int c = 1; c <= 2; c++) {
+					int m = 0;
+					for (int dr = -1; dr <= 1; dr++)
+						for (int dc = -1; dc <= 1; dc++)
+							m = m << 1 | cells >> (15 - 4 * (r + dr) - (c + dc)) & 1;
+					next = next << 1 | (map[m] ? 1 : 0);
+				}
+			base[cells] = (byte) next;
+		}
+	}
+
+	/**
+	 * Applies one of the eight symmetries of the square to a 3x3 neighborhood
+	 * @param m
+	 * @param t bit 0 mirrors left to right, bit 1 mirrors top to bottom, bit 2 swaps rows and columns
+	 * @return the transformed neighborhood
+	 */
+	static int transform(int m, int t) {
+		int result = 0;
+		for (int i = 0; i < 9; i++) {
+			if ((m >> i & 1) == 0)
+				continue;
+			int r = i / 3, c = i % 3;
+			if ((t & 1) != 0) c = 2 - c;
+			if ((t & 2) != 0) r = 2 - r;
+			if ((t & 4) != 0) { int tmp = r; r = c; c = tmp; }
+			result |= 1 << (3 * r + c);
+		}
+		return result;
+	}
+
+	/**
+	 * Clears cached next generation results from all QuadNodes, which were found under the rule being replaced
 	 */
-	private void clearQuadCache() {
+	static void clearQuadCache() {
+		MemoCache.forget(NodeManager.t.getCode()); // Its cache has to be loaded again to get the results back
 		try {
 			for (QuadNode q: QuadNode.hashMap.keySet())
 				q.updatedToTransition = false;